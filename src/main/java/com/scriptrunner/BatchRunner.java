@@ -0,0 +1,246 @@
+package com.scriptrunner;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+ * Headless mode: runs every .swift/.kts script in a directory (or matching a glob)
+ * through ScriptExecutor with bounded parallelism, writes each script's output to its
+ * own log file and prints a summary table. Log files mirror the scripts' paths below the
+ * searched directory, so every script gets a distinct log.
+ *
+ * Usage: BatchRunner <directory|glob> [--parallel N] [--logs DIR]
+ *    or: ScriptRunnerApp --batch <directory|glob> [--parallel N] [--logs DIR]
+ */
+public class BatchRunner {
+    
+    public static final String BATCH_FLAG = "--batch";
+    
+    private static final String USAGE = "Usage: BatchRunner <directory|glob> [--parallel N] [--logs DIR]";
+    
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+    
+    // Returns the process exit code: 0 if every script exited with 0
+    public static int run(String[] args) {
+        String target = null;
+        int parallelism = ScriptExecutor.DEFAULT_MAX_CONCURRENT_RUNS;
+        Path logDir = Paths.get("batch-logs");
+        
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--parallel":
+                        parallelism = Integer.parseInt(args[++i]);
+                        break;
+                    case "--logs":
+                        logDir = Paths.get(args[++i]);
+                        break;
+                    default:
+                        target = args[i];
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            System.err.println(USAGE);
+            return 2;
+        }
+        if (target == null || parallelism < 1) {
+            System.err.println(USAGE);
+            return 2;
+        }
+        
+        List<Path> scripts;
+        Path searchRoot = searchRoot(target);
+        try {
+            scripts = findScripts(target);
+            Files.createDirectories(logDir);
+        } catch (IOException e) {
+            System.err.println("Failed to prepare batch: " + e.getMessage());
+            return 2;
+        }
+        if (scripts.isEmpty()) {
+            System.err.println("No .swift or .kts scripts found for " + target);
+            return 2;
+        }
+        
+        System.out.println("Running " + scripts.size() + " scripts with parallelism " + parallelism);
+        ScriptExecutor executor = new ScriptExecutor(parallelism);
+        // Each script runs once, so caching its compiled form would only cost CPU
+        executor.setCacheKotlinCompiles(false);
+        try {
+            List<BatchEntry> entries = new ArrayList<>();
+            for (Path script : scripts) {
+                entries.add(start(executor, script, logDir.resolve(logFileName(searchRoot, script))));
+            }
+            for (BatchEntry entry : entries) {
+                entry.exitCode = entry.handle == null ? -1 : entry.handle.await();
+                if (entry.logClosed != null) {
+                    entry.logClosed.join();
+                }
+            }
+            printSummary(entries);
+            return entries.stream().allMatch(entry -> entry.exitCode == 0) ? 0 : 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.stop();
+            return 130;
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    private static BatchEntry start(ScriptExecutor executor, Path script, Path logFile) {
+        BatchEntry entry = new BatchEntry(script, logFile);
+        ScriptRunnerApp.ScriptLanguage language = ScriptRunnerApp.ScriptLanguage.fromFileName(script.getFileName().toString());
+        
+        Writer log;
+        String code;
+        try {
+            code = Files.readString(script);
+            Files.createDirectories(entry.logFile.getParent());
+            log = Files.newBufferedWriter(entry.logFile, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.println("Skipping " + script + ": " + e.getMessage());
+            return entry;
+        }
+        
+        entry.handle = executor.execute(code, language, new ScriptExecutor.ExecutionCallback() {
+            @Override
+            public void onOutput(String output) {
+                write(output);
+            }
+            
+            @Override
+            public void onError(String error) {
+                write("[ERROR] " + error + "\n");
+            }
+            
+            @Override
+            public void onComplete(int exitCode) {
+                // Log is closed once the handle completes
+            }
+            
+            private void write(String text) {
+                synchronized (log) {
+                    try {
+                        log.write(text);
+                    } catch (IOException e) {
+                        // Keep running; the summary still reports the exit code
+                    }
+                }
+            }
+        });
+        
+        entry.logClosed = entry.handle.onExit().whenComplete((exitCode, error) -> {
+            synchronized (log) {
+                try {
+                    log.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+            System.out.println("[done] " + script + " exit=" + exitCode + " " + entry.handle.getElapsedMillis() + " ms");
+        });
+        return entry;
+    }
+    
+    // A directory is searched recursively; anything else is treated as a glob
+    static List<Path> findScripts(String target) throws IOException {
+        Path asPath = Paths.get(target);
+        if (Files.isDirectory(asPath)) {
+            return listScripts(asPath, path -> true);
+        }
+        
+        Path root = searchRoot(target);
+        // Java's "**/" needs at least one directory; let it match none, as in shells with
+        // globstar, so "scripts/**/*.kts" includes scripts/a.kts (groups cannot nest)
+        String glob = target.contains("{") ? target : target.replace("**/", "{**/,}");
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        return listScripts(root, path -> matcher.matches(path) || matcher.matches(root.relativize(path)));
+    }
+    
+    // The target directory, or for a glob the longest prefix without glob characters
+    private static Path searchRoot(String target) {
+        Path asPath = Paths.get(target);
+        if (Files.isDirectory(asPath)) {
+            return asPath;
+        }
+        Path base = Paths.get("");
+        for (Path part : asPath) {
+            if (part.toString().matches(".*[*?\\[{].*")) {
+                break;
+            }
+            base = base.resolve(part);
+        }
+        if (asPath.isAbsolute()) {
+            base = asPath.getRoot().resolve(base);
+        }
+        return base.toString().isEmpty() ? Paths.get(".") : base;
+    }
+    
+    private static List<Path> listScripts(Path root, java.util.function.Predicate<Path> filter) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.walk(root)) {
+            return files
+                .filter(Files::isRegularFile)
+                .filter(path -> ScriptRunnerApp.ScriptLanguage.fromFileName(path.getFileName().toString()) != null)
+                .map(path -> root.equals(Paths.get(".")) ? root.relativize(path) : path)
+                .filter(filter)
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+    
+    // Path of the script below the search root plus ".log"; distinct scripts never share it
+    private static String logFileName(Path searchRoot, Path script) {
+        Path relative = searchRoot.normalize().relativize(script.normalize());
+        return relative + ".log";
+    }
+    
+    private static void printSummary(List<BatchEntry> entries) {
+        int nameWidth = entries.stream()
+            .mapToInt(entry -> entry.script.toString().length())
+            .max()
+            .orElse(6);
+        nameWidth = Math.max(nameWidth, "Script".length());
+        String format = "%-" + nameWidth + "s  %6s  %10s  %s%n";
+        
+        System.out.println();
+        System.out.printf(format, "Script", "Exit", "Time (ms)", "Log");
+        System.out.println("-".repeat(nameWidth + 30));
+        entries.stream()
+            .sorted(Comparator.comparing((BatchEntry entry) -> entry.exitCode == 0).thenComparing(entry -> entry.script))
+            .forEach(entry -> System.out.printf(format,
+                entry.script,
+                entry.exitCode,
+                entry.handle == null ? 0 : entry.handle.getElapsedMillis(),
+                entry.logFile));
+        
+        long failed = entries.stream().filter(entry -> entry.exitCode != 0).count();
+        System.out.println();
+        System.out.println(entries.size() + " scripts, " + (entries.size() - failed) + " succeeded, " + failed + " failed");
+    }
+    
+    private static class BatchEntry {
+        final Path script;
+        final Path logFile;
+        ExecutionHandle handle;
+        CompletableFuture<Integer> logClosed;
+        int exitCode;
+        
+        BatchEntry(Path script, Path logFile) {
+            this.script = script;
+            this.logFile = logFile;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.scriptrunner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/*
+ * Content-addressed store for compiled script artifacts (executables, jars).
+ * Entries live under the executor's temp workspace and are evicted least-recently-used
+ * first once their total size exceeds the configured budget.
+ *
+ * A run pins the entry it was handed (acquire/commit) until it calls release, and pinned
+ * entries are never evicted or replaced, so an executable or class directory cannot be
+ * deleted between lookup and process start or while the process is using it.
+ */
+public class CompilationCache {
+    
+    private final Path cacheDir;
+    private final long maxBytes;
+    // Access-ordered: iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Runs currently using each entry; absent means unpinned
+    private final Map<String, Integer> pins = new HashMap<>();
+    private long totalBytes;
+    
+    public CompilationCache(Path cacheDir, long maxBytes) throws IOException {
+        this.cacheDir = Files.createDirectories(cacheDir);
+        this.maxBytes = maxBytes;
+    }
+    
+    public static String key(String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : parts) {
+                byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+                // Length prefix keeps ("ab", "c") and ("a", "bc") apart
+                digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) ':');
+                digest.update(bytes);
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    // Returns the cached artifact pinned until release(key), or null on a miss
+    public synchronized Path acquire(String key) {
+        if (entries.get(key) == null) {
+            return null;
+        }
+        Path artifact = cacheDir.resolve(key);
+        if (!Files.exists(artifact)) {
+            totalBytes -= entries.remove(key);
+            return null;
+        }
+        pins.merge(key, 1, Integer::sum);
+        return artifact;
+    }
+    
+    public synchronized void release(String key) {
+        Integer count = pins.get(key);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            pins.put(key, count - 1);
+        } else {
+            pins.remove(key);
+            // Eviction may have been held back by this pin
+            evict();
+        }
+    }
+    
+    // Scratch location to build an artifact into before commit()
+    public Path newStagingPath(String key) throws IOException {
+        return Files.createTempDirectory(cacheDir, key + ".staging").resolve(key);
+    }
+    
+    // Stores a staged artifact and returns it pinned like acquire(key). If another run
+    // committed the same key first, its artifact is kept: the key covers the content, so
+    // both are equivalent, and that one may already be running.
+    public synchronized Path commit(String key, Path staged) throws IOException {
+        Path artifact = cacheDir.resolve(key);
+        if (entries.containsKey(key) && Files.exists(artifact)) {
+            deleteRecursively(staged.getParent());
+            pins.merge(key, 1, Integer::sum);
+            return artifact;
+        }
+        Long previous = entries.remove(key);
+        if (previous != null) {
+            totalBytes -= previous;
+        }
+        Files.move(staged, artifact, StandardCopyOption.REPLACE_EXISTING);
+        deleteRecursively(staged.getParent());
+        
+        long size = sizeOf(artifact);
+        entries.put(key, size);
+        totalBytes += size;
+        pins.merge(key, 1, Integer::sum);
+        evict();
+        return artifact;
+    }
+    
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+    
+    // Pinned entries are skipped; the budget is enforced again when they are released
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            if (pins.containsKey(eldest.getKey())) {
+                continue;
+            }
+            it.remove();
+            totalBytes -= eldest.getValue();
+            deleteRecursively(cacheDir.resolve(eldest.getKey()));
+            System.err.println("Evicted cached artifact " + eldest.getKey());
+        }
+    }
+    
+    private static long sizeOf(Path path) throws IOException {
+        try (Stream<Path> files = Files.walk(path)) {
+            return files.filter(Files::isRegularFile).mapToLong(p -> {
+                try {
+                    return Files.size(p);
+                } catch (IOException e) {
+                    return 0;
+                }
+            }).sum();
+        }
+    }
+    
+    static void deleteRecursively(Path path) {
+        if (path == null || !Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            files.sorted((p1, p2) -> -p1.compareTo(p2)) // Reverse order for deletion
+                .forEach(p -> {
+                    try {
+                        Files.delete(p);
+                    } catch (IOException e) {
+                        // Ignore cleanup errors
+                    }
+                });
+        } catch (IOException e) {
+            // Ignore cleanup errors
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.scriptrunner;
+
+/*
+ * One compiler diagnostic found in a run's stderr, e.g.
+ *   /tmp/run-1/script.swift:3:7: error: cannot find 'x' in scope
+ * Parsed once on the reader side by DiagnosticParser and carried on the OutputChunk,
+ * so views can show clickable locations without parsing text themselves.
+ */
+public class Diagnostic {
+    
+    public enum Severity {
+        ERROR,
+        WARNING,
+        NOTE
+    }
+    
+    private final String file;
+    private final int line;
+    private final int column;
+    private final Severity severity;
+    private final String message;
+    // "file:line:column" exactly as it appears in the output line
+    private final String locationText;
+    
+    public Diagnostic(String file, int line, int column, Severity severity, String message, String locationText) {
+        this.file = file;
+        this.line = line;
+        this.column = column;
+        this.severity = severity;
+        this.message = message;
+        this.locationText = locationText;
+    }
+    
+    public String getFile() { return file; }
+    public int getLine() { return line; }
+    public int getColumn() { return column; }
+    public Severity getSeverity() { return severity; }
+    public String getMessage() { return message; }
+    public String getLocationText() { return locationText; }
+    
+    @Override
+    public String toString() {
+        return locationText + ": " + severity.name().toLowerCase() + ": " + message;
+    }
+}
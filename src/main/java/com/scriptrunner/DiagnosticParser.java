@@ -0,0 +1,97 @@
+package com.scriptrunner;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Finds swiftc/kotlinc diagnostics ("file.swift:line:column: error: message") in output.
+ * The pattern is compiled once, and a plain indexOf for ".swift:" / ".kts:" decides which
+ * lines are worth matching at all, so output without diagnostics never reaches the regex.
+ * Runs on the reader side (OutputDecoder), never on the FX thread.
+ */
+public class DiagnosticParser {
+    
+    private static final Pattern DIAGNOSTIC = Pattern.compile(
+        "(\\w+\\.(?:swift|kts)):(\\d+):(\\d+):\\s+(error|warning|note):\\s*(.*)");
+    private static final String[] MARKERS = {".swift:", ".kts:"};
+    
+    private DiagnosticParser() {
+    }
+    
+    // Returns the diagnostic on a single line, or null
+    public static Diagnostic parseLine(String line) {
+        if (nextMarker(line, 0) < 0) {
+            return null;
+        }
+        Matcher matcher = DIAGNOSTIC.matcher(line);
+        return matcher.find() ? toDiagnostic(matcher) : null;
+    }
+    
+    // Parses the complete lines of a chunk's text in one pass; lineEnds are the indices of
+    // the '\n' terminators. Returns the diagnostic of each line by line number, or null if
+    // no line has one.
+    public static Diagnostic[] parseLines(String text, int[] lineEnds) {
+        Diagnostic[] found = null;
+        Matcher matcher = null;
+        // Next occurrence of each marker, found again only once we are past it
+        int[] nextHits = new int[MARKERS.length];
+        for (int m = 0; m < MARKERS.length; m++) {
+            nextHits[m] = text.indexOf(MARKERS[m]);
+        }
+        int line = 0;
+        int position = 0;
+        while (line < lineEnds.length) {
+            int hit = -1;
+            for (int m = 0; m < MARKERS.length; m++) {
+                if (nextHits[m] >= 0 && nextHits[m] < position) {
+                    nextHits[m] = text.indexOf(MARKERS[m], position);
+                }
+                if (nextHits[m] >= 0 && (hit < 0 || nextHits[m] < hit)) {
+                    hit = nextHits[m];
+                }
+            }
+            if (hit < 0) {
+                break;
+            }
+            while (line < lineEnds.length && lineEnds[line] < hit) {
+                line++;
+            }
+            if (line == lineEnds.length) {
+                break;
+            }
+            if (matcher == null) {
+                matcher = DIAGNOSTIC.matcher(text);
+            }
+            matcher.region(line == 0 ? 0 : lineEnds[line - 1] + 1, lineEnds[line]);
+            if (matcher.find()) {
+                if (found == null) {
+                    found = new Diagnostic[lineEnds.length];
+                }
+                found[line] = toDiagnostic(matcher);
+            }
+            position = lineEnds[line] + 1;
+            line++;
+        }
+        return found;
+    }
+    
+    private static int nextMarker(String text, int from) {
+        int next = -1;
+        for (String marker : MARKERS) {
+            int index = text.indexOf(marker, from);
+            if (index >= 0 && (next < 0 || index < next)) {
+                next = index;
+            }
+        }
+        return next;
+    }
+    
+    private static Diagnostic toDiagnostic(Matcher matcher) {
+        String file = matcher.group(1);
+        int line = Integer.parseInt(matcher.group(2));
+        int column = Integer.parseInt(matcher.group(3));
+        Diagnostic.Severity severity = Diagnostic.Severity.valueOf(matcher.group(4).toUpperCase());
+        String locationText = matcher.group(1) + ":" + matcher.group(2) + ":" + matcher.group(3);
+        return new Diagnostic(file, line, column, severity, matcher.group(5), locationText);
+    }
+}
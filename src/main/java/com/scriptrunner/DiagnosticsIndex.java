@@ -0,0 +1,64 @@
+package com.scriptrunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Diagnostics of the latest run or background type-check, keyed by source line (1-based)
+ * so the editor gutter can look up the markers of a visible paragraph in O(1).
+ * Filled incrementally as output streams in. Only used from the FX thread.
+ */
+public class DiagnosticsIndex {
+    
+    private final Map<Integer, List<Diagnostic>> byLine = new HashMap<>();
+    private final List<Runnable> listeners = new ArrayList<>();
+    private int size;
+    
+    public void add(Diagnostic diagnostic) {
+        byLine.computeIfAbsent(diagnostic.getLine(), line -> new ArrayList<>(1)).add(diagnostic);
+        size++;
+        fireChanged();
+    }
+    
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        byLine.clear();
+        size = 0;
+        fireChanged();
+    }
+    
+    public List<Diagnostic> get(int line) {
+        List<Diagnostic> diagnostics = byLine.get(line);
+        return diagnostics == null ? Collections.emptyList() : Collections.unmodifiableList(diagnostics);
+    }
+    
+    // Most severe diagnostic on the line, or null
+    public Diagnostic.Severity getSeverity(int line) {
+        Diagnostic.Severity worst = null;
+        for (Diagnostic diagnostic : byLine.getOrDefault(line, Collections.emptyList())) {
+            if (worst == null || diagnostic.getSeverity().compareTo(worst) < 0) {
+                worst = diagnostic.getSeverity();
+            }
+        }
+        return worst;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+    
+    private void fireChanged() {
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+}
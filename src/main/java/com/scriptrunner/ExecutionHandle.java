@@ -0,0 +1,106 @@
+package com.scriptrunner;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/*
+ * One script run started by ScriptExecutor.execute.
+ * Each run owns its work directory, its process and its completion state,
+ * so several runs can be in flight at the same time.
+ */
+public class ExecutionHandle {
+    
+    private final int id;
+    private final ScriptRunnerApp.ScriptLanguage language;
+    private final Path workDir;
+    private final CompletableFuture<Integer> completion = new CompletableFuture<>();
+    
+    private Process process;
+    private boolean cancelled;
+    private volatile long startNanos;
+    private volatile long endNanos;
+    
+    ExecutionHandle(int id, ScriptRunnerApp.ScriptLanguage language, Path workDir) {
+        this.id = id;
+        this.language = language;
+        this.workDir = workDir;
+    }
+    
+    public int getId() { return id; }
+    public ScriptRunnerApp.ScriptLanguage getLanguage() { return language; }
+    public Path getWorkDir() { return workDir; }
+    
+    public Path getScriptFile() {
+        return workDir.resolve("script." + language.getFileExtension());
+    }
+    
+    public synchronized void cancel() {
+        if (cancelled || completion.isDone()) {
+            return;
+        }
+        cancelled = true;
+        if (process != null && process.isAlive()) {
+            process.destroyForcibly();
+        }
+    }
+    
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+    
+    public boolean isDone() {
+        return completion.isDone();
+    }
+    
+    // Blocks until the run has finished and returns its exit code
+    public int await() throws InterruptedException {
+        try {
+            return completion.get();
+        } catch (ExecutionException e) {
+            return -1;
+        }
+    }
+    
+    // Exit code of a finished run, or null while it is still running
+    public Integer getExitCode() {
+        return completion.getNow(null);
+    }
+    
+    public CompletableFuture<Integer> onExit() {
+        return completion;
+    }
+    
+    // Wall-clock time since the run left the queue, up to completion; 0 if it never started
+    public long getElapsedMillis() {
+        if (startNanos == 0) {
+            return 0;
+        }
+        long end = endNanos != 0 ? endNanos : System.nanoTime();
+        return (end - startNanos) / 1_000_000;
+    }
+    
+    void markStarted() {
+        startNanos = System.nanoTime();
+    }
+    
+    // Returns false if the run was cancelled before the process could be attached
+    synchronized boolean attach(Process process) {
+        if (cancelled) {
+            process.destroyForcibly();
+            return false;
+        }
+        this.process = process;
+        return true;
+    }
+    
+    void complete(int exitCode) {
+        if (startNanos != 0) {
+            endNanos = System.nanoTime();
+        }
+        synchronized (this) {
+            process = null;
+        }
+        completion.complete(exitCode);
+    }
+}
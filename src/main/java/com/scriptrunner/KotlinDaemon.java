@@ -0,0 +1,230 @@
+package com.scriptrunner;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+ * Client side of the warm Kotlin evaluation processes (see KotlinDaemonServer).
+ * Each run gets a process of its own that has already loaded the compiler: one spare is
+ * kept warming in the background and replaced as soon as a run takes it. The script's
+ * exit status is the process's, and cancelling the run kills the process.
+ * Callers fall back to the cold `kotlinc -script` path whenever run() throws
+ * DaemonUnavailableException, which only happens before the script path has been sent.
+ */
+public class KotlinDaemon {
+    
+    private static final long STARTUP_TIMEOUT_SECONDS = 60;
+    
+    // Only held to start or hand out processes, never while one warms up, so shutdown()
+    // does not wait for a slow start
+    private final Object lock = new Object();
+    // Warmed-up (or still warming) process for the next run
+    private Process spare;
+    // Processes not yet running a script, including the spare; killed by shutdown()
+    private final Set<Process> idle = new HashSet<>();
+    private boolean unavailable;
+    private boolean closed;
+    
+    public static class DaemonUnavailableException extends IOException {
+        private static final long serialVersionUID = 1L;
+        
+        public DaemonUnavailableException(String message) {
+            super(message);
+        }
+        
+        public DaemonUnavailableException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+    
+    // Start a spare in the background so the first run does not pay for warming up
+    public void prewarm() {
+        synchronized (lock) {
+            if (spare != null || unavailable || closed) {
+                return;
+            }
+            try {
+                spare = start();
+            } catch (IOException e) {
+                System.err.println("Kotlin daemon not started: " + e.getMessage());
+            }
+        }
+    }
+    
+    // Hands the run's script to a warm process and returns that process, attached to the
+    // handle, with only the script's output left to read. Returns null if the run was
+    // cancelled while waiting for the process to warm up.
+    public Process run(ExecutionHandle handle) throws IOException {
+        Process process;
+        synchronized (lock) {
+            if (unavailable || closed) {
+                throw new DaemonUnavailableException("Kotlin daemon unavailable");
+            }
+            process = spare != null && spare.isAlive() ? spare : start();
+            spare = null;
+        }
+        // Cancelling from here on kills the process, which also ends the wait below
+        if (!handle.attach(process)) {
+            forget(process);
+            return null;
+        }
+        
+        try {
+            if (!awaitReady(process)) {
+                if (handle.isCancelled()) {
+                    return null;
+                }
+                synchronized (lock) {
+                    unavailable = true;
+                }
+                throw new DaemonUnavailableException("Kotlin daemon failed to start");
+            }
+            OutputStream in = process.getOutputStream();
+            in.write((handle.getScriptFile().toAbsolutePath() + "\n").getBytes(StandardCharsets.UTF_8));
+            in.flush();
+        } catch (IOException e) {
+            process.destroyForcibly();
+            if (handle.isCancelled()) {
+                return null;
+            }
+            if (e instanceof DaemonUnavailableException) {
+                throw e;
+            }
+            throw new DaemonUnavailableException("Kotlin daemon not reachable", e);
+        } finally {
+            forget(process);
+        }
+        // Warm the next one while this run is going
+        prewarm();
+        return process;
+    }
+    
+    private void forget(Process process) {
+        synchronized (lock) {
+            idle.remove(process);
+        }
+    }
+    
+    public void shutdown() {
+        synchronized (lock) {
+            closed = true;
+            spare = null;
+            for (Process process : idle) {
+                process.destroyForcibly();
+            }
+            idle.clear();
+        }
+    }
+    
+    // Called with lock held; only launches the JVM, warming up happens in the background
+    private Process start() throws IOException {
+        Path libDir = findKotlinLib();
+        if (libDir == null) {
+            unavailable = true;
+            throw new DaemonUnavailableException("kotlinc installation not found");
+        }
+        
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(buildClasspath(libDir));
+        command.add(KotlinDaemonServer.class.getName());
+        
+        // Scripts run in the app's working directory, as with every other run
+        Process process = new ProcessBuilder(command).start();
+        idle.add(process);
+        return process;
+    }
+    
+    // Reads the READY line byte by byte from the raw stream, so that none of the script
+    // output following it is buffered away from the caller
+    private static boolean awaitReady(Process process) throws IOException {
+        boolean[] ready = new boolean[1];
+        Thread readerThread = new Thread(() -> {
+            try {
+                InputStream stdout = process.getInputStream();
+                ByteArrayOutputStream line = new ByteArrayOutputStream();
+                int b;
+                while ((b = stdout.read()) != -1 && b != '\n') {
+                    line.write(b);
+                }
+                ready[0] = b == '\n' && line.toString(StandardCharsets.UTF_8).trim().equals(KotlinDaemonServer.READY);
+            } catch (IOException e) {
+                // Treated as a failed start
+            }
+        }, "kotlin-daemon-ready");
+        readerThread.setDaemon(true);
+        readerThread.start();
+        try {
+            readerThread.join(TimeUnit.SECONDS.toMillis(STARTUP_TIMEOUT_SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroyForcibly();
+            throw new DaemonUnavailableException("Interrupted while starting Kotlin daemon");
+        }
+        if (readerThread.isAlive()) {
+            process.destroyForcibly();
+            return false;
+        }
+        return ready[0];
+    }
+    
+    private static String buildClasspath(Path libDir) throws IOException {
+        Path ownLocation = ownClasspathEntry();
+        if (ownLocation == null) {
+            throw new DaemonUnavailableException("Cannot locate script-runner classes");
+        }
+        try (Stream<Path> jars = Files.list(libDir)) {
+            String libJars = jars
+                .filter(p -> p.getFileName().toString().endsWith(".jar"))
+                .map(Path::toString)
+                .collect(Collectors.joining(File.pathSeparator));
+            return ownLocation + File.pathSeparator + libJars;
+        }
+    }
+    
+    // Jar or directory holding the script-runner classes, for child JVMs that run them
+    static Path ownClasspathEntry() {
+        try {
+            return Paths.get(KotlinDaemonServer.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+    
+    static Path findKotlinLib() {
+        String kotlinHome = System.getenv("KOTLIN_HOME");
+        if (kotlinHome != null && Files.isDirectory(Paths.get(kotlinHome, "lib"))) {
+            return Paths.get(kotlinHome, "lib");
+        }
+        String path = System.getenv("PATH");
+        if (path == null) {
+            return null;
+        }
+        for (String dir : path.split(File.pathSeparator)) {
+            Path candidate = Paths.get(dir, "kotlinc");
+            if (Files.isExecutable(candidate)) {
+                try {
+                    // kotlinc is usually a symlink into <home>/bin
+                    Path lib = candidate.toRealPath().getParent().getParent().resolve("lib");
+                    if (Files.isDirectory(lib)) {
+                        return lib;
+                    }
+                } catch (IOException e) {
+                    // Try next PATH entry
+                }
+            }
+        }
+        return null;
+    }
+}
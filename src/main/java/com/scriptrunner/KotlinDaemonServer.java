@@ -0,0 +1,112 @@
+package com.scriptrunner;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Pre-warmed Kotlin evaluation process used by KotlinDaemon; each one serves a single run.
+ * Launched with the kotlinc lib jars on the classpath, it loads the compiler and evaluates
+ * a throwaway script before announcing itself, so the run it is handed only pays for its
+ * own compilation.
+ *
+ * The script then runs in this JVM with the process's own stdout and stderr. Output, exit
+ * codes, System.exit (or exitProcess) and cancellation therefore behave as for any other
+ * script process: the script's exit status is the process's, and Stop kills the process.
+ *
+ * Protocol:
+ *   server -> client: READY on stdout, a single line, once warmed up
+ *   client -> server: script path on stdin, UTF-8, terminated by '\n'; EOF instead means
+ *     the app has gone away and the process exits
+ *   afterwards stdout/stderr carry only the script's output
+ */
+public class KotlinDaemonServer {
+    
+    public static final String READY = "KOTLIN-DAEMON-READY";
+    
+    // "ERROR Unresolved reference: foo (ScriptingHost1a2b_Line_0.kts:2:1)"
+    private static final Pattern ENGINE_PROBLEM = Pattern.compile("(?:(ERROR|WARNING) )?(.*) \\([^()]*:(\\d+):(\\d+)\\)");
+    
+    public static void main(String[] args) throws IOException {
+        PrintStream originalOut = System.out;
+        PrintStream originalErr = System.err;
+        // Nothing printed while warming up may end up in the run's output
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        System.setOut(discard);
+        System.setErr(discard);
+        
+        // Exiting without READY makes the client fall back to kotlinc
+        ScriptEngine engine = new ScriptEngineManager().getEngineByExtension("kts");
+        if (engine == null) {
+            System.exit(1);
+        }
+        try {
+            engine.eval("1 + 1");
+        } catch (Exception e) {
+            // The run will report the problem
+        }
+        originalOut.println(READY);
+        originalOut.flush();
+        
+        String scriptPath = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)).readLine();
+        if (scriptPath == null) {
+            System.exit(0);
+        }
+        System.setOut(originalOut);
+        System.setErr(originalErr);
+        int exitCode = evaluate(engine, scriptPath);
+        System.out.flush();
+        System.err.flush();
+        // Like kotlinc -script, threads the script left running end with it
+        System.exit(exitCode);
+    }
+    
+    private static int evaluate(ScriptEngine engine, String scriptPath) {
+        try {
+            String code = Files.readString(Paths.get(scriptPath));
+            engine.eval(code);
+            return 0;
+        } catch (ScriptException e) {
+            if (e.getCause() != null) {
+                // Thrown by the script itself
+                e.getCause().printStackTrace();
+            } else {
+                System.err.println(formatErrors(Paths.get(scriptPath).getFileName().toString(), e));
+            }
+            return 1;
+        } catch (Throwable t) {
+            t.printStackTrace();
+            return 1;
+        }
+    }
+    
+    // Reports compile errors as "file:line:column: error: message" like kotlinc, so that
+    // DiagnosticParser finds their locations. The engine puts one problem per line of the
+    // message, each ending in the location within its own generated file name.
+    private static String formatErrors(String fileName, ScriptException e) {
+        StringBuilder report = new StringBuilder();
+        for (String problem : e.getMessage().split("\n")) {
+            if (report.length() > 0) {
+                report.append('\n');
+            }
+            Matcher matcher = ENGINE_PROBLEM.matcher(problem);
+            if (matcher.matches()) {
+                String severity = "WARNING".equals(matcher.group(1)) ? "warning" : "error";
+                report.append(fileName).append(':').append(matcher.group(3)).append(':').append(matcher.group(4))
+                    .append(": ").append(severity).append(": ").append(matcher.group(2));
+            } else if (e.getLineNumber() > 0) {
+                report.append(fileName).append(':').append(e.getLineNumber()).append(':')
+                    .append(Math.max(1, e.getColumnNumber())).append(": error: ").append(problem);
+            } else {
+                report.append(fileName).append(": error: ").append(problem);
+            }
+        }
+        return report.toString();
+    }
+}
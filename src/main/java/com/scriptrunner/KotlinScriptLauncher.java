@@ -0,0 +1,45 @@
+package com.scriptrunner;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/*
+ * Entry point for Kotlin scripts that ScriptExecutor runs from the compilation cache.
+ * The main() that kotlinc generates for a script goes through the scripting host, which
+ * needs script metadata that `kotlinc -d` does not write. The script body runs in the
+ * constructor of the script class, so it is instantiated directly instead, needing only
+ * the stdlib and script runtime on the classpath.
+ *
+ * Usage: KotlinScriptLauncher <marker file> <script class> [args...]
+ * The marker file is created just before the script starts. A failed run without it
+ * never reached the script and can safely be retried elsewhere.
+ */
+public class KotlinScriptLauncher {
+    
+    // File name ScriptExecutor uses for the marker in a run's work directory
+    public static final String LAUNCHED_MARKER = ".launched";
+    // Only meaningful together with a missing marker
+    private static final int LAUNCH_FAILED_EXIT_CODE = 2;
+    
+    public static void main(String[] args) throws Throwable {
+        Constructor<?> constructor;
+        try {
+            constructor = Class.forName(args[1]).getConstructor(String[].class);
+            Files.createFile(Paths.get(args[0]));
+        } catch (Exception | LinkageError e) {
+            // Nothing is printed: the caller falls back and the run's output stays clean
+            System.exit(LAUNCH_FAILED_EXIT_CODE);
+            return;
+        }
+        
+        try {
+            constructor.newInstance((Object) Arrays.copyOfRange(args, 2, args.length));
+        } catch (InvocationTargetException e) {
+            // Reported by the JVM like an exception escaping a plain main()
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.scriptrunner;
+
+import java.util.Arrays;
+
+/*
+ * Start offset of every line of the editor text, kept in a Fenwick tree over line lengths
+ * so line -> offset and offset -> line are O(log n) instead of a walk over all paragraphs.
+ * Updated from the editor's plain text changes; an edit that keeps the number of lines
+ * (typing within a line) is a point update, one that adds or removes lines shifts the
+ * length array and rebuilds the tree in a single linear pass. Only used from the FX thread.
+ */
+public class LineOffsetIndex {
+    
+    // Length of each line including its '\n'; the last line has none
+    private int[] lengths = new int[64];
+    // Fenwick tree over lengths, 1-based
+    private int[] tree = new int[65];
+    private int lineCount = 1;
+    
+    public int getLineCount() {
+        return lineCount;
+    }
+    
+    // Total length of the text
+    public int getLength() {
+        return prefixSum(lineCount);
+    }
+    
+    // Offset of the first char of the 0-based line
+    public int getLineStart(int line) {
+        checkLine(line);
+        return prefixSum(line);
+    }
+    
+    // Length of the 0-based line without its terminator
+    public int getLineLength(int line) {
+        checkLine(line);
+        return line == lineCount - 1 ? lengths[line] : lengths[line] - 1;
+    }
+    
+    // 0-based line containing offset; an offset at a line end belongs to that line
+    public int getLineOf(int offset) {
+        if (offset < 0 || offset > getLength()) {
+            throw new IndexOutOfBoundsException("Offset " + offset + " of " + getLength());
+        }
+        // Binary lifting: find the last line whose start is <= offset
+        int line = 0;
+        int remaining = offset;
+        for (int step = Integer.highestOneBit(lineCount); step > 0; step >>= 1) {
+            int next = line + step;
+            if (next <= lineCount && tree[next] <= remaining) {
+                line = next;
+                remaining -= tree[next];
+            }
+        }
+        return Math.min(line, lineCount - 1);
+    }
+    
+    // Offset of the 0-based line and column, clamped to the text
+    public int getOffset(int line, int column) {
+        int clampedLine = Math.max(0, Math.min(line, lineCount - 1));
+        return getLineStart(clampedLine) + Math.max(0, Math.min(column, getLineLength(clampedLine)));
+    }
+    
+    // Replaces the whole text
+    public void reset(CharSequence text) {
+        lineCount = 1;
+        lengths[0] = 0;
+        rebuild();
+        replace(0, 0, 0, text);
+    }
+    
+    // Applies an edit: removedText at position was replaced by inserted
+    public void replace(int position, CharSequence removedText, CharSequence inserted) {
+        replace(position, removedText.length(), countNewlines(removedText), inserted);
+    }
+    
+    private void replace(int position, int removedLength, int removedLines, CharSequence inserted) {
+        int first = getLineOf(position);
+        int column = position - prefixSum(first);
+        int last = first + removedLines;
+        
+        // What is left of the first and last touched lines around the edit
+        int suffix;
+        if (removedLines == 0) {
+            suffix = lengths[first] - column - removedLength;
+        } else {
+            int removedInLast = removedLength - (prefixSum(last) - position);
+            suffix = lengths[last] - removedInLast;
+        }
+        
+        int insertedLines = countNewlines(inserted);
+        int[] replacement = new int[insertedLines + 1];
+        int pieceStart = 0;
+        int piece = 0;
+        for (int i = 0; i < inserted.length(); i++) {
+            if (inserted.charAt(i) == '\n') {
+                replacement[piece++] = i - pieceStart + 1;
+                pieceStart = i + 1;
+            }
+        }
+        replacement[piece] = inserted.length() - pieceStart;
+        replacement[0] += column;
+        replacement[insertedLines] += suffix;
+        
+        if (insertedLines == removedLines) {
+            for (int i = 0; i <= insertedLines; i++) {
+                add(first + i, replacement[i] - lengths[first + i]);
+                lengths[first + i] = replacement[i];
+            }
+            return;
+        }
+        
+        int newCount = lineCount - removedLines + insertedLines;
+        if (newCount > lengths.length) {
+            lengths = Arrays.copyOf(lengths, Math.max(newCount, lengths.length * 2));
+        }
+        System.arraycopy(lengths, last + 1, lengths, first + insertedLines + 1, lineCount - last - 1);
+        System.arraycopy(replacement, 0, lengths, first, replacement.length);
+        lineCount = newCount;
+        rebuild();
+    }
+    
+    private void checkLine(int line) {
+        if (line < 0 || line >= lineCount) {
+            throw new IndexOutOfBoundsException("Line " + line + " of " + lineCount);
+        }
+    }
+    
+    // Sum of the lengths of the first `lines` lines
+    private int prefixSum(int lines) {
+        int sum = 0;
+        for (int i = lines; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+    
+    private void add(int line, int delta) {
+        for (int i = line + 1; i <= lineCount; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+    
+    // Linear-time Fenwick construction
+    private void rebuild() {
+        if (tree.length < lengths.length + 1) {
+            tree = new int[lengths.length + 1];
+        }
+        System.arraycopy(lengths, 0, tree, 1, lineCount);
+        Arrays.fill(tree, lineCount + 1, tree.length, 0);
+        for (int i = 1; i <= lineCount; i++) {
+            int parent = i + (i & -i);
+            if (parent <= lineCount) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+    
+    private static int countNewlines(CharSequence text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,84 @@
+package com.scriptrunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Coalesces the output of one run before it reaches the ExecutionCallback.
+ * Chunks are collected until they hold maxChars characters or the oldest one has waited
+ * maxDelayMillis, then handed over as one onOutputBatch() call. A chatty script thus
+ * costs the consumer a bounded number of calls per second instead of one per read.
+ *
+ * Sits between ScriptExecutor's output sources and the caller's callback; errors are
+ * passed through after flushing so they stay in order with the output before them.
+ */
+public class OutputBatcher implements ScriptExecutor.ExecutionCallback {
+    
+    private final ScriptExecutor.ExecutionCallback target;
+    private final int maxChars;
+    private final Executor delayedFlush;
+    
+    private List<OutputChunk> buffered = new ArrayList<>();
+    private int bufferedChars;
+    // Bumped on every flush so a timer armed for an earlier batch does nothing
+    private long batchNumber;
+    
+    public OutputBatcher(ScriptExecutor.ExecutionCallback target, int maxChars, long maxDelayMillis) {
+        this.target = target;
+        this.maxChars = maxChars;
+        this.delayedFlush = CompletableFuture.delayedExecutor(maxDelayMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    @Override
+    public synchronized void onOutputChunk(OutputChunk chunk) {
+        buffered.add(chunk);
+        bufferedChars += chunk.getText().length();
+        if (bufferedChars >= maxChars) {
+            flush();
+        } else if (buffered.size() == 1) {
+            long armedFor = batchNumber;
+            delayedFlush.execute(() -> flushBatch(armedFor));
+        }
+    }
+    
+    @Override
+    public void onOutput(String output) {
+        // Only reached by sources that do not produce chunks; keep them in order
+        flush();
+        target.onOutput(output);
+    }
+    
+    @Override
+    public void onError(String error) {
+        flush();
+        target.onError(error);
+    }
+    
+    @Override
+    public void onComplete(int exitCode) {
+        flush();
+        target.onComplete(exitCode);
+    }
+    
+    // Delivers everything buffered so far. Runs under the lock so batches can never
+    // overtake each other on their way to the target.
+    public synchronized void flush() {
+        batchNumber++;
+        if (buffered.isEmpty()) {
+            return;
+        }
+        List<OutputChunk> batch = buffered;
+        buffered = new ArrayList<>();
+        bufferedChars = 0;
+        target.onOutputBatch(batch);
+    }
+    
+    private synchronized void flushBatch(long armedFor) {
+        if (batchNumber == armedFor) {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.scriptrunner;
+
+/*
+ * A batch of decoded output as delivered by OutputPump.
+ * The text holds complete lines, each terminated by '\n', and may end with a partial
+ * line that was flushed early (see OutputPump's partial-line flush); the next chunk of
+ * the same stream then continues that line. getLineEnd(i) is the index of the i-th
+ * terminator so consumers can walk lines without searching the text again.
+ *
+ * stdout and stderr are read separately; every chunk records which stream it came from
+ * and the System.nanoTime() at which its bytes were read, so chunks of both streams can
+ * be merged back into the order they were produced.
+ *
+ * Compiler diagnostics on complete stderr lines are parsed when the chunk is built (see
+ * DiagnosticParser) and attached per line.
+ */
+public class OutputChunk {
+    
+    public enum Source {
+        STDOUT,
+        STDERR
+    }
+    
+    private final Source source;
+    private final long timestampNanos;
+    private final String text;
+    private final int[] lineEnds;
+    // Diagnostic by line number, null if the chunk has none
+    private final Diagnostic[] diagnostics;
+    
+    public OutputChunk(Source source, long timestampNanos, String text, int[] lineEnds) {
+        this(source, timestampNanos, text, lineEnds, null);
+    }
+    
+    public OutputChunk(Source source, long timestampNanos, String text, int[] lineEnds, Diagnostic[] diagnostics) {
+        this.source = source;
+        this.timestampNanos = timestampNanos;
+        this.text = text;
+        this.lineEnds = lineEnds;
+        this.diagnostics = diagnostics;
+    }
+    
+    public Source getSource() {
+        return source;
+    }
+    
+    public boolean isStderr() {
+        return source == Source.STDERR;
+    }
+    
+    // Monotonic read time (System.nanoTime), only comparable within this JVM
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+    
+    public String getText() {
+        return text;
+    }
+    
+    public int getLineCount() {
+        return lineEnds.length;
+    }
+    
+    // Index of the '\n' ending line i
+    public int getLineEnd(int i) {
+        return lineEnds[i];
+    }
+    
+    public int getLineStart(int i) {
+        return i == 0 ? 0 : lineEnds[i - 1] + 1;
+    }
+    
+    // True if the text ends with a line whose newline has not arrived yet
+    public boolean endsWithPartialLine() {
+        return lineEnds.length == 0 ? !text.isEmpty() : lineEnds[lineEnds.length - 1] != text.length() - 1;
+    }
+    
+    public boolean hasDiagnostics() {
+        return diagnostics != null;
+    }
+    
+    // Diagnostic on line i, or null
+    public Diagnostic getDiagnostic(int i) {
+        return diagnostics == null ? null : diagnostics[i];
+    }
+    
+    // Line i without its terminator
+    public String getLine(int i) {
+        return text.substring(getLineStart(i), lineEnds[i]);
+    }
+}
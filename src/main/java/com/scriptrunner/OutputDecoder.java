@@ -0,0 +1,152 @@
+package com.scriptrunner;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/*
+ * Incremental UTF-8 decoder for one output stream.
+ * Raw bytes are fed in arbitrary pieces; every feed() that completes at least one
+ * line delivers an OutputChunk holding all of those lines. The decoder and line-end
+ * scratch array are reused for the life of the stream; the char buffer is per thread.
+ * Chunks are stamped with the time of the feed() that delivered their last bytes.
+ * Complete stderr lines are also run through DiagnosticParser here, on the reader thread.
+ */
+public class OutputDecoder {
+    
+    private static final int CHAR_BUFFER_SIZE = 64 * 1024;
+    private static final byte[] NO_BYTES = new byte[0];
+    
+    // Decoded chars are copied out before feed() returns, so one buffer per thread is enough
+    private static final ThreadLocal<CharBuffer> SCRATCH = ThreadLocal.withInitial(() -> CharBuffer.allocate(CHAR_BUFFER_SIZE));
+    
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final OutputChunk.Source source;
+    private final Consumer<OutputChunk> sink;
+    private long feedNanos;
+    
+    // Decoded text not yet delivered: complete lines followed by the current partial line
+    private final StringBuilder pending = new StringBuilder();
+    private int[] lineEnds = new int[64];
+    private int lineCount;
+    // A partial line has been delivered and its newline has not arrived yet
+    private boolean lineOpen;
+    
+    // Bytes of a multi-byte sequence split across two feeds (at most 3)
+    private byte[] carry = NO_BYTES;
+    
+    public OutputDecoder(OutputChunk.Source source, Consumer<OutputChunk> sink) {
+        this.source = source;
+        this.sink = sink;
+    }
+    
+    public void feed(byte[] buffer, int offset, int length) {
+        feedNanos = System.nanoTime();
+        ByteBuffer in;
+        if (carry.length > 0) {
+            // Rare: only when a character straddles two reads
+            in = ByteBuffer.allocate(carry.length + length);
+            in.put(carry).put(buffer, offset, length).flip();
+        } else {
+            in = ByteBuffer.wrap(buffer, offset, length);
+        }
+        
+        CharBuffer chars = SCRATCH.get();
+        CoderResult result;
+        do {
+            result = decoder.decode(in, chars, false);
+            drainChars(chars);
+        } while (result.isOverflow());
+        
+        carry = in.hasRemaining() ? Arrays.copyOfRange(in.array(), in.arrayOffset() + in.position(), in.arrayOffset() + in.limit()) : NO_BYTES;
+        deliverCompleteLines();
+    }
+    
+    public boolean hasPartialLine() {
+        return pending.length() > 0;
+    }
+    
+    // Delivers the current partial line (a prompt, a progress bar) without waiting for its
+    // newline; the rest of the line continues in the next chunk
+    public void flushPartialLine() {
+        if (pending.length() == 0) {
+            return;
+        }
+        deliver(pending.toString(), new int[0]);
+        pending.setLength(0);
+        lineOpen = true;
+    }
+    
+    // End of stream: decode what is left and terminate a trailing partial line
+    public void finish() {
+        CharBuffer chars = SCRATCH.get();
+        ByteBuffer in = ByteBuffer.wrap(carry);
+        carry = NO_BYTES;
+        decoder.decode(in, chars, true);
+        decoder.flush(chars);
+        drainChars(chars);
+        decoder.reset();
+        
+        if (pending.length() > 0 || lineOpen) {
+            pending.append('\n');
+            recordLineEnd(pending.length() - 1);
+        }
+        deliverCompleteLines();
+    }
+    
+    private void drainChars(CharBuffer chars) {
+        chars.flip();
+        int base = pending.length();
+        char[] array = chars.array();
+        int limit = chars.limit();
+        int lastLineEnd = -1;
+        for (int i = 0; i < limit; i++) {
+            if (array[i] == '\n') {
+                recordLineEnd(base + i);
+                lastLineEnd = i;
+            }
+        }
+        if (base == 0 && lastLineEnd >= 0) {
+            // Common case: nothing carried over, build the chunk straight from the buffer
+            deliver(new String(array, 0, lastLineEnd + 1), Arrays.copyOf(lineEnds, lineCount));
+            lineCount = 0;
+            lineOpen = false;
+            pending.append(array, lastLineEnd + 1, limit - lastLineEnd - 1);
+        } else {
+            pending.append(array, 0, limit);
+        }
+        chars.clear();
+    }
+    
+    private void recordLineEnd(int index) {
+        if (lineCount == lineEnds.length) {
+            lineEnds = Arrays.copyOf(lineEnds, lineCount * 2);
+        }
+        lineEnds[lineCount++] = index;
+    }
+    
+    private void deliverCompleteLines() {
+        if (lineCount == 0) {
+            return;
+        }
+        int end = lineEnds[lineCount - 1] + 1;
+        String text = pending.substring(0, end);
+        int[] ends = Arrays.copyOf(lineEnds, lineCount);
+        pending.delete(0, end);
+        lineCount = 0;
+        lineOpen = false;
+        deliver(text, ends);
+    }
+    
+    private void deliver(String text, int[] ends) {
+        Diagnostic[] diagnostics = source == OutputChunk.Source.STDERR ? DiagnosticParser.parseLines(text, ends) : null;
+        sink.accept(new OutputChunk(source, feedNanos, text, ends, diagnostics));
+    }
+}
@@ -0,0 +1,331 @@
+package com.scriptrunner;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+import javafx.scene.Cursor;
+import javafx.scene.Node;
+import javafx.scene.layout.HBox;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Text;
+import org.fxmisc.flowless.Cell;
+import org.fxmisc.flowless.VirtualFlow;
+import org.fxmisc.flowless.VirtualizedScrollPane;
+
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/*
+ * Output view for a single run: a virtualized list of lines with clickable error locations.
+ * ScriptRunnerApp shows one of these per run so concurrent runs do not interleave.
+ *
+ * Completed lines are kept once, in an append-only OutputStore that spills old output to
+ * disk; the VirtualFlow only builds nodes for the lines in the viewport, so neither the
+ * scene graph nor the heap grows with the length of the output.
+ *
+ * Output is treated as a terminal stream rather than as whole lines: a partial line is
+ * shown as soon as it arrives, and '\r' moves back to the start of the current line so
+ * that following text overwrites it (progress bars, spinners). Error locations come
+ * from the Diagnostic records that the reader side attaches to stderr chunks; the view
+ * itself never parses output.
+ *
+ * Appends may come from any thread. They go into a lock-free queue that an AnimationTimer
+ * drains once per pulse for at most DRAIN_BUDGET_NANOS, followed by a single list change
+ * and autoscroll, so a script printing at full speed cannot starve input handling.
+ */
+public class OutputPane {
+    
+    public interface LocationListener {
+        void onLocationClicked(int line, int column);
+    }
+    
+    private final OutputStore store;
+    private final LineList lines = new LineList();
+    private final VirtualFlow<Integer, Cell<Integer, HBox>> outputFlow;
+    private final VirtualizedScrollPane<VirtualFlow<Integer, Cell<Integer, HBox>>> outputScrollPane;
+    private final LocationListener locationListener;
+    
+    // Frame time spent applying output; the rest of the pulse is left for input and layout
+    private static final long DRAIN_BUDGET_NANOS = 4_000_000;
+    private final ConcurrentLinkedQueue<PendingOutput> pendingOutput = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private volatile boolean disposed;
+    private final AnimationTimer drainTimer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            drain();
+        }
+    };
+    
+    // The line still being written and the column the next character goes to
+    private final StringBuilder currentLine = new StringBuilder();
+    private int cursorColumn;
+    private boolean currentLineFromStderr;
+    // currentLine is shown after the stored lines
+    private boolean currentLineShown;
+    // Diagnostics by store line; only stderr lines with a compiler location have one
+    private final Map<Integer, Diagnostic> lineDiagnostics = new HashMap<>();
+    private Consumer<Diagnostic> diagnosticListener;
+    
+    // Scrollback beyond the in-memory window is spilled to files in spillDir
+    public OutputPane(LocationListener locationListener, Path spillDir) {
+        this.locationListener = locationListener;
+        this.store = new OutputStore(spillDir);
+        
+        // Only visible lines get nodes; clickable error locations are built per cell
+        outputFlow = VirtualFlow.createVertical(lines, line -> Cell.wrapNode(createLineNode(line)));
+        outputFlow.setStyle("-fx-font-family: 'Courier New', monospace; -fx-font-size: 12px;");
+        outputScrollPane = new VirtualizedScrollPane<>(outputFlow);
+    }
+    
+    public Node getNode() {
+        return outputScrollPane;
+    }
+    
+    // Safe to call from any thread
+    public void appendOutput(String output) {
+        enqueue(new PendingOutput(output, false, null));
+    }
+    
+    // Safe to call from any thread
+    public void appendErrorOutput(String output) {
+        enqueue(new PendingOutput(output, true, null));
+    }
+    
+    // Safe to call from any thread; keeps the chunk's diagnostics
+    public void appendChunk(OutputChunk chunk) {
+        enqueue(new PendingOutput(chunk.getText(), chunk.isStderr(), chunk.hasDiagnostics() ? chunk : null));
+    }
+    
+    private void enqueue(PendingOutput output) {
+        if (disposed) {
+            return;
+        }
+        pendingOutput.add(output);
+        if (drainScheduled.compareAndSet(false, true)) {
+            Platform.runLater(drainTimer::start);
+        }
+    }
+    
+    // Runs on the FX thread once per pulse while output is pending
+    private void drain() {
+        int firstCompleted = store.getLineCount();
+        boolean wasShown = currentLineShown;
+        long deadline = System.nanoTime() + DRAIN_BUDGET_NANOS;
+        PendingOutput next;
+        while (System.nanoTime() < deadline && (next = pendingOutput.poll()) != null) {
+            append(next.text, next.stderr, next.chunk);
+        }
+        
+        currentLineShown = currentLine.length() > 0;
+        // One list change and one autoscroll for everything applied this frame
+        lines.changed(firstCompleted, wasShown);
+        if (!lines.isEmpty()) {
+            outputFlow.showAsLast(lines.size() - 1);
+        }
+        
+        if (pendingOutput.isEmpty()) {
+            drainTimer.stop();
+            drainScheduled.set(false);
+            // Output that arrived after the last poll must not wait for the next append
+            if (!pendingOutput.isEmpty() && drainScheduled.compareAndSet(false, true)) {
+                drainTimer.start();
+            }
+        }
+    }
+    
+    private void append(String output, boolean stderr, OutputChunk chunk) {
+        if (stderr && !output.isEmpty()) {
+            currentLineFromStderr = true;
+        }
+        int segmentStart = 0;
+        int chunkLine = 0;
+        for (int i = 0; i < output.length(); i++) {
+            char c = output.charAt(i);
+            if (c == '\n') {
+                writeAtCursor(output, segmentStart, i);
+                completeLine(chunk == null ? null : chunk.getDiagnostic(chunkLine++));
+                currentLineFromStderr = stderr && i + 1 < output.length();
+                segmentStart = i + 1;
+            } else if (c == '\r') {
+                writeAtCursor(output, segmentStart, i);
+                cursorColumn = 0;
+                segmentStart = i + 1;
+            }
+        }
+        writeAtCursor(output, segmentStart, output.length());
+    }
+    
+    // Called on the FX thread for each diagnostic as its line completes
+    public void setDiagnosticListener(Consumer<Diagnostic> diagnosticListener) {
+        this.diagnosticListener = diagnosticListener;
+    }
+    
+    // Releases the spilled scrollback; the pane must not be used afterwards
+    public void dispose() {
+        disposed = true;
+        pendingOutput.clear();
+        drainTimer.stop();
+        store.close();
+    }
+    
+    public void clear() {
+        pendingOutput.clear();
+        int oldSize = lines.size();
+        store.clear();
+        lineDiagnostics.clear();
+        currentLine.setLength(0);
+        cursorColumn = 0;
+        currentLineFromStderr = false;
+        currentLineShown = false;
+        lines.cleared(oldSize);
+    }
+    
+    // Overwrites from the cursor like a terminal; text past the end is appended
+    private void writeAtCursor(String text, int start, int end) {
+        if (start == end) {
+            return;
+        }
+        int overwriteEnd = Math.min(currentLine.length(), cursorColumn + (end - start));
+        currentLine.replace(cursorColumn, overwriteEnd, text.substring(start, end));
+        cursorColumn += end - start;
+    }
+    
+    private void completeLine(Diagnostic diagnostic) {
+        int index = store.appendLine(currentLine, currentLineFromStderr);
+        if (diagnostic != null) {
+            lineDiagnostics.put(index, diagnostic);
+            if (diagnosticListener != null) {
+                diagnosticListener.accept(diagnostic);
+            }
+        }
+        currentLine.setLength(0);
+        cursorColumn = 0;
+    }
+    
+    private HBox createLineNode(int index) {
+        boolean partial = index == store.getLineCount();
+        String text = partial ? currentLine.toString() : store.getLine(index);
+        boolean stderr = partial ? currentLineFromStderr : store.isStderr(index);
+        Diagnostic diagnostic = partial ? null : lineDiagnostics.get(index);
+        
+        HBox node = new HBox();
+        if (!stderr) {
+            node.getChildren().add(createText(text, Color.BLACK));
+        } else if (diagnostic != null) {
+            addClickableErrorLine(node, text, diagnostic);
+        } else {
+            node.getChildren().add(createText(text, Color.DARKRED));
+        }
+        return node;
+    }
+    
+    private void addClickableErrorLine(HBox node, String line, Diagnostic diagnostic) {
+        // The line may have grown a prefix since it was parsed (partial flush, '\r')
+        int locationStart = line.indexOf(diagnostic.getLocationText());
+        if (locationStart < 0) {
+            node.getChildren().add(createText(line, Color.DARKRED));
+            return;
+        }
+        int locationEnd = locationStart + diagnostic.getLocationText().length();
+        int lineNum = diagnostic.getLine();
+        int colNum = diagnostic.getColumn();
+        
+        // Add prefix text
+        if (locationStart > 0) {
+            node.getChildren().add(createText(line.substring(0, locationStart), Color.BLACK));
+        }
+        
+        // Add clickable filename:line:column part
+        Text clickableText = new Text(diagnostic.getLocationText());
+        clickableText.setFill(Color.BLUE);
+        clickableText.setUnderline(true);
+        clickableText.setCursor(Cursor.HAND);
+        clickableText.setOnMouseClicked(e -> {
+            System.out.println("Clicked error location: line=" + lineNum + ", col=" + colNum);
+            locationListener.onLocationClicked(lineNum, colNum);
+        });
+        
+        // Add suffix (error message)
+        Text suffixText = new Text(line.substring(locationEnd));
+        suffixText.setFill(Color.DARKRED);
+        
+        node.getChildren().addAll(clickableText, suffixText);
+    }
+    
+    private Text createText(String text, Color fill) {
+        Text normalText = new Text(text);
+        normalText.setFill(fill);
+        return normalText;
+    }
+    
+    private static class PendingOutput {
+        final String text;
+        final boolean stderr;
+        // Only set when the chunk carries diagnostics
+        final OutputChunk chunk;
+        
+        PendingOutput(String text, boolean stderr, OutputChunk chunk) {
+            this.text = text;
+            this.stderr = stderr;
+            this.chunk = chunk;
+        }
+    }
+    
+    // Line indices as seen by the VirtualFlow: the stored lines plus the partial line, if shown.
+    // Items are only indices, so the list itself holds no text.
+    private class LineList extends ObservableListBase<Integer> {
+        
+        @Override
+        public Integer get(int index) {
+            return index;
+        }
+        
+        @Override
+        public int size() {
+            return store.getLineCount() + (currentLineShown ? 1 : 0);
+        }
+        
+        // Lines from firstCompleted were added to the store since the last change; the
+        // partial line, previously shown at index firstCompleted, was replaced or removed
+        void changed(int firstCompleted, boolean partialWasShown) {
+            int oldSize = firstCompleted + (partialWasShown ? 1 : 0);
+            int newSize = size();
+            if (oldSize == newSize && !partialWasShown) {
+                return;
+            }
+            beginChange();
+            if (partialWasShown) {
+                nextRemove(firstCompleted, firstCompleted);
+            }
+            if (newSize > firstCompleted) {
+                nextAdd(firstCompleted, newSize);
+            }
+            endChange();
+        }
+        
+        void cleared(int oldSize) {
+            if (oldSize == 0) {
+                return;
+            }
+            beginChange();
+            nextRemove(0, new AbstractList<Integer>() {
+                @Override
+                public Integer get(int index) {
+                    return index;
+                }
+                
+                @Override
+                public int size() {
+                    return oldSize;
+                }
+            });
+            endChange();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.scriptrunner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/*
+ * Reads the output of every running process on one shared thread.
+ * Instead of a blocking reader thread per stream, the pump polls all registered
+ * streams with available() and backs off while they are idle, so the number of
+ * threads stays constant no matter how many processes are in flight.
+ *
+ * Bytes are read in large chunks into one reused buffer and decoded per stream by an
+ * OutputDecoder, which delivers all complete lines of a read as a single OutputChunk.
+ * A partial line (prompt, progress bar) is flushed once its stream has been idle for
+ * the partial-line flush interval instead of waiting for the newline.
+ */
+public class OutputPump {
+    
+    private static final OutputPump SHARED = new OutputPump();
+    
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final long MIN_IDLE_PARK_NANOS = 50_000;      // 50 us
+    private static final long MAX_IDLE_PARK_NANOS = 8_000_000;   // 8 ms
+    public static final long DEFAULT_PARTIAL_FLUSH_MILLIS = 16;
+    
+    private final ConcurrentLinkedQueue<PumpedStream> incoming = new ConcurrentLinkedQueue<>();
+    private final List<PumpedStream> streams = new ArrayList<>();
+    private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+    private final Thread pumpThread;
+    private volatile long partialFlushNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_PARTIAL_FLUSH_MILLIS);
+    
+    public static OutputPump shared() {
+        return SHARED;
+    }
+    
+    private OutputPump() {
+        pumpThread = new Thread(this::pumpLoop, "output-pump");
+        pumpThread.setDaemon(true);
+        pumpThread.start();
+    }
+    
+    public long getPartialFlushMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(partialFlushNanos);
+    }
+    
+    // How long a stream must be idle before a line without newline is delivered
+    public void setPartialFlushMillis(long millis) {
+        partialFlushNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis));
+    }
+    
+    // Pumps `in` until `finished` reports true and no buffered bytes remain.
+    // The returned future completes after the last chunk has been delivered.
+    public CompletableFuture<Void> register(InputStream in, OutputChunk.Source source, BooleanSupplier finished,
+                                            Consumer<OutputChunk> onChunk, Consumer<IOException> onFailure) {
+        PumpedStream stream = new PumpedStream(in, source, finished, onChunk, onFailure);
+        incoming.add(stream);
+        LockSupport.unpark(pumpThread);
+        return stream.done;
+    }
+    
+    private void pumpLoop() {
+        long idleParkNanos = MIN_IDLE_PARK_NANOS;
+        while (true) {
+            PumpedStream added;
+            while ((added = incoming.poll()) != null) {
+                streams.add(added);
+            }
+            
+            if (streams.isEmpty()) {
+                // Nothing to read: sleep until register() wakes us
+                LockSupport.park(this);
+                idleParkNanos = MIN_IDLE_PARK_NANOS;
+                continue;
+            }
+            
+            boolean readAny = false;
+            Iterator<PumpedStream> it = streams.iterator();
+            while (it.hasNext()) {
+                PumpedStream stream = it.next();
+                try {
+                    if (stream.pump(readBuffer, partialFlushNanos)) {
+                        readAny = true;
+                    } else if (stream.isFinished()) {
+                        stream.close(null);
+                        it.remove();
+                    }
+                } catch (IOException e) {
+                    stream.close(e);
+                    it.remove();
+                } catch (RuntimeException e) {
+                    // A failing consumer must not take the pump down for everyone else
+                    stream.close(new IOException(e));
+                    it.remove();
+                }
+            }
+            
+            if (readAny) {
+                idleParkNanos = MIN_IDLE_PARK_NANOS;
+            } else {
+                LockSupport.parkNanos(this, idleParkNanos);
+                idleParkNanos = Math.min(idleParkNanos * 2, MAX_IDLE_PARK_NANOS);
+            }
+        }
+    }
+    
+    private static class PumpedStream {
+        private final InputStream in;
+        private final BooleanSupplier finished;
+        private final Consumer<IOException> onFailure;
+        private final OutputDecoder decoder;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private boolean finishedSeen;
+        private long lastDataNanos = System.nanoTime();
+        
+        PumpedStream(InputStream in, OutputChunk.Source source, BooleanSupplier finished,
+                     Consumer<OutputChunk> onChunk, Consumer<IOException> onFailure) {
+            this.in = in;
+            this.finished = finished;
+            this.onFailure = onFailure;
+            this.decoder = new OutputDecoder(source, onChunk);
+        }
+        
+        // Reads whatever is available without blocking; returns true if anything was read
+        boolean pump(byte[] buffer, long partialFlushNanos) throws IOException {
+            // Sample the finished flag before available(): once the producer is done,
+            // everything it wrote is already visible to available()
+            finishedSeen = finished.getAsBoolean();
+            int available = in.available();
+            if (available <= 0) {
+                if (decoder.hasPartialLine() && System.nanoTime() - lastDataNanos >= partialFlushNanos) {
+                    decoder.flushPartialLine();
+                }
+                return false;
+            }
+            int read = in.read(buffer, 0, Math.min(available, buffer.length));
+            if (read <= 0) {
+                finishedSeen = true;
+                return false;
+            }
+            lastDataNanos = System.nanoTime();
+            decoder.feed(buffer, 0, read);
+            return true;
+        }
+        
+        boolean isFinished() {
+            return finishedSeen;
+        }
+        
+        void close(IOException failure) {
+            try {
+                if (failure == null) {
+                    decoder.finish();
+                }
+                // A stream closed under us after the producer died (e.g. Stop) is not an error
+                if (failure != null && !finished.getAsBoolean()) {
+                    onFailure.accept(failure);
+                }
+            } finally {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+                done.complete(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.scriptrunner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+ * Append-only store for the completed output lines of one run.
+ * Text lives in fixed-size char chunks that are never copied once filled, so appends are
+ * amortized O(1) and every character is stored exactly once; views read lines back by
+ * index. Line terminators are not stored. Only used from the FX thread.
+ *
+ * Heap use is bounded: only the newest maxChars of text and maxLines of line index stay
+ * in memory. Older chunks and index entries are spilled, in order, to an append-only data
+ * file and index file in spillDir and read back through memory-mapped windows when an
+ * old line is requested (the user scrolls up). Nothing is dropped.
+ */
+public class OutputStore {
+    
+    public static final long DEFAULT_MAX_CHARS = 8L * 1024 * 1024;   // 16 MB of chars
+    public static final int DEFAULT_MAX_LINES = 512 * 1024;          // 4 MB of index
+    
+    private static final int CHUNK_CHARS = 64 * 1024;
+    
+    private final Path spillDir;
+    private final long maxChars;
+    private final int maxLines;
+    
+    // Ring of in-memory chunks: slot ringHead holds global chunk number firstChunk
+    private char[][] ring;
+    private int ringHead;
+    private int ringCount;
+    private long firstChunk;
+    private int lastChunkUsed = CHUNK_CHARS;
+    private long length;
+    
+    // Index entry per line: start offset << 1 | stderr. Line i ends where line i + 1 starts.
+    // Entries for lines before firstMemoryLine are in the index file.
+    private long[] lineEntries = new long[1024];
+    private int memoryLineCount;
+    private int firstMemoryLine;
+    
+    private SpillFile spilledText;
+    private SpillFile spilledIndex;
+    // Set when spilling failed; everything stays in memory from then on
+    private boolean spillDisabled;
+    
+    public OutputStore(Path spillDir) {
+        this(spillDir, DEFAULT_MAX_CHARS, DEFAULT_MAX_LINES);
+    }
+    
+    public OutputStore(Path spillDir, long maxChars, int maxLines) {
+        this.spillDir = spillDir;
+        this.maxChars = Math.max(maxChars, 2L * CHUNK_CHARS);
+        this.maxLines = Math.max(maxLines, 1024);
+        this.ring = new char[(int) (this.maxChars / CHUNK_CHARS)][];
+    }
+    
+    // Appends one complete line and returns its index
+    public int appendLine(CharSequence line, boolean stderr) {
+        if (memoryLineCount == lineEntries.length) {
+            if (!spillLines()) {
+                lineEntries = Arrays.copyOf(lineEntries, memoryLineCount * 2);
+            }
+        }
+        lineEntries[memoryLineCount++] = length << 1 | (stderr ? 1 : 0);
+        
+        int copied = 0;
+        while (copied < line.length()) {
+            if (lastChunkUsed == CHUNK_CHARS) {
+                addChunk();
+            }
+            char[] chunk = ring[(ringHead + ringCount - 1) % ring.length];
+            int n = Math.min(line.length() - copied, CHUNK_CHARS - lastChunkUsed);
+            for (int i = 0; i < n; i++) {
+                chunk[lastChunkUsed + i] = line.charAt(copied + i);
+            }
+            lastChunkUsed += n;
+            copied += n;
+        }
+        length += line.length();
+        return getLineCount() - 1;
+    }
+    
+    public int getLineCount() {
+        return firstMemoryLine + memoryLineCount;
+    }
+    
+    // Total number of stored chars, terminators excluded
+    public long getLength() {
+        return length;
+    }
+    
+    public boolean isStderr(int line) {
+        return (entry(line) & 1) != 0;
+    }
+    
+    public String getLine(int line) {
+        if (line < 0 || line >= getLineCount()) {
+            throw new IndexOutOfBoundsException("Line " + line + " of " + getLineCount());
+        }
+        long start = entry(line) >>> 1;
+        long end = line + 1 < getLineCount() ? entry(line + 1) >>> 1 : length;
+        char[] text = new char[(int) (end - start)];
+        
+        // A line may straddle chunk boundaries and the spilled/in-memory boundary
+        int copied = 0;
+        long firstMemoryChar = firstChunk * CHUNK_CHARS;
+        while (copied < text.length) {
+            long offset = start + copied;
+            int inChunk = (int) (offset % CHUNK_CHARS);
+            int n = Math.min(text.length - copied, CHUNK_CHARS - inChunk);
+            if (offset >= firstMemoryChar) {
+                char[] chunk = ring[(int) ((ringHead + offset / CHUNK_CHARS - firstChunk) % ring.length)];
+                System.arraycopy(chunk, inChunk, text, copied, n);
+            } else {
+                try {
+                    spilledText.readChars(offset * 2, text, copied, n);
+                } catch (IOException e) {
+                    return "[output unavailable: " + e.getMessage() + "]";
+                }
+            }
+            copied += n;
+        }
+        return new String(text);
+    }
+    
+    public void clear() {
+        close();
+        Arrays.fill(ring, null);
+        ringHead = 0;
+        ringCount = 0;
+        firstChunk = 0;
+        lastChunkUsed = CHUNK_CHARS;
+        length = 0;
+        memoryLineCount = 0;
+        firstMemoryLine = 0;
+        spillDisabled = false;
+    }
+    
+    // Deletes the spill files; the store is empty afterwards only if clear() is called
+    public void close() {
+        if (spilledText != null) {
+            spilledText.delete();
+            spilledText = null;
+        }
+        if (spilledIndex != null) {
+            spilledIndex.delete();
+            spilledIndex = null;
+        }
+    }
+    
+    private long entry(int line) {
+        if (line >= firstMemoryLine) {
+            return lineEntries[line - firstMemoryLine];
+        }
+        try {
+            return spilledIndex.readLong(line * 8L);
+        } catch (IOException e) {
+            System.err.println("Failed to read spilled output index: " + e.getMessage());
+            return 0;
+        }
+    }
+    
+    // Starts a new chunk; when the ring is full its oldest chunk is spilled to make room
+    private void addChunk() {
+        if (ringCount == ring.length && !spillOldestChunk()) {
+            // Spilling failed: keep everything in memory rather than lose output
+            char[][] grown = new char[ring.length * 2][];
+            for (int i = 0; i < ringCount; i++) {
+                grown[i] = ring[(ringHead + i) % ring.length];
+            }
+            ring = grown;
+            ringHead = 0;
+        }
+        ring[(ringHead + ringCount) % ring.length] = new char[CHUNK_CHARS];
+        ringCount++;
+        lastChunkUsed = 0;
+    }
+    
+    private boolean spillOldestChunk() {
+        if (spillDisabled) {
+            return false;
+        }
+        try {
+            if (spilledText == null) {
+                spilledText = new SpillFile(Files.createTempFile(spillDir, "output", ".text"));
+            }
+            ByteBuffer bytes = ByteBuffer.allocate(CHUNK_CHARS * 2);
+            bytes.asCharBuffer().put(ring[ringHead]);
+            spilledText.append(bytes);
+        } catch (IOException e) {
+            disableSpill(e);
+            return false;
+        }
+        ring[ringHead] = null;
+        ringHead = (ringHead + 1) % ring.length;
+        ringCount--;
+        firstChunk++;
+        return true;
+    }
+    
+    // Moves the older half of the in-memory index to the index file once it is full
+    private boolean spillLines() {
+        if (memoryLineCount < maxLines || spillDisabled) {
+            return false;
+        }
+        int spilled = memoryLineCount / 2;
+        try {
+            if (spilledIndex == null) {
+                spilledIndex = new SpillFile(Files.createTempFile(spillDir, "output", ".index"));
+            }
+            ByteBuffer bytes = ByteBuffer.allocate(spilled * 8);
+            bytes.asLongBuffer().put(lineEntries, 0, spilled);
+            spilledIndex.append(bytes);
+        } catch (IOException e) {
+            disableSpill(e);
+            return false;
+        }
+        System.arraycopy(lineEntries, spilled, lineEntries, 0, memoryLineCount - spilled);
+        memoryLineCount -= spilled;
+        firstMemoryLine += spilled;
+        return true;
+    }
+    
+    private void disableSpill(IOException e) {
+        System.err.println("Failed to spill output to disk, keeping it in memory: " + e.getMessage());
+        spillDisabled = true;
+    }
+    
+    // Append-only file read back through a memory-mapped window
+    private static class SpillFile {
+        private static final int WINDOW_BYTES = 4 * 1024 * 1024;
+        
+        private final Path path;
+        private final FileChannel channel;
+        private long size;
+        private MappedByteBuffer window;
+        private long windowStart;
+        
+        SpillFile(Path path) throws IOException {
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        
+        void append(ByteBuffer bytes) throws IOException {
+            bytes.rewind();
+            while (bytes.hasRemaining()) {
+                size += channel.write(bytes, size);
+            }
+        }
+        
+        long readLong(long position) throws IOException {
+            return map(position, 8).getLong((int) (position - windowStart));
+        }
+        
+        void readChars(long position, char[] target, int offset, int count) throws IOException {
+            // Chunks are written whole, so a chunk-bounded run of chars is always in one window
+            MappedByteBuffer buffer = map(position, count * 2L);
+            int base = (int) (position - windowStart);
+            for (int i = 0; i < count; i++) {
+                target[offset + i] = buffer.getChar(base + i * 2);
+            }
+        }
+        
+        // Maps the window-aligned region holding [position, position + length)
+        private MappedByteBuffer map(long position, long length) throws IOException {
+            if (window == null || position < windowStart || position + length > windowStart + window.capacity()) {
+                long start = position - position % WINDOW_BYTES;
+                long end = Math.min(size, Math.max(start + WINDOW_BYTES, position + length));
+                window = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                windowStart = start;
+            }
+            return window;
+        }
+        
+        void delete() {
+            window = null;
+            try {
+                channel.close();
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                // Ignore cleanup errors
+            }
+        }
+    }
+}
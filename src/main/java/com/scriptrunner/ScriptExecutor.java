@@ -5,141 +5,668 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ScriptExecutor {
     
-    private Process currentProcess;
+    private final Set<ExecutionHandle> activeRuns = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger nextRunId = new AtomicInteger(1);
+    // Diagnostics-only compiles, see typecheck(); numbered apart from runs
+    private final Set<ExecutionHandle> activeChecks = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger nextCheckId = new AtomicInteger(1);
+    private final int maxConcurrentRuns;
+    private final ArrayDeque<PendingRun> pendingRuns = new ArrayDeque<>();
+    private int runningCount;
     private ExecutorService executorService;
+    // Setup of background type-checks and cache compiles, which must not wait behind runs
+    // blocked on a Kotlin daemon warming up in executorService
+    private final ExecutorService backgroundService;
     private Path tempDir;
+    private final KotlinDaemon kotlinDaemon = new KotlinDaemon();
+    private CompilationCache compilationCache;
+    private String swiftToolchainVersion;
+    private KotlinToolchain kotlinToolchain;
+    // Detection runs a compiler for seconds; kept off `this`, which execute() takes on the FX thread
+    private final Object toolchainLock = new Object();
+    // Background kotlinc compiles: keys queued or running, the tail of the queue, and the
+    // running processes for shutdown() to destroy
+    private final Set<String> kotlinCompilesInFlight = new HashSet<>();
+    private CompletableFuture<Void> lastKotlinCompile = CompletableFuture.completedFuture(null);
+    private final Set<Process> kotlinCompileProcesses = ConcurrentHashMap.newKeySet();
+    private volatile boolean cacheKotlinCompiles = true;
+    
+    public static final int DEFAULT_MAX_CONCURRENT_RUNS = Runtime.getRuntime().availableProcessors();
+    private static final long COMPILATION_CACHE_BYTES = 256L * 1024 * 1024;
+    // kotlinc names the script class after the file: script.kts -> Script
+    private static final String KOTLIN_SCRIPT_FILE = "script.kts";
+    private static final String KOTLIN_SCRIPT_CLASS = "Script";
+    private static final int MAX_QUEUED_KOTLIN_COMPILES = 4;
+    // A Swift cache entry holds the executable and the compile's stderr
+    private static final String SWIFT_BINARY = "script";
+    private static final String SWIFT_COMPILE_LOG = "compile.stderr";
+    private static final int CANCELLED_EXIT_CODE = -1;
+    // Output is handed to callbacks in batches of up to this many chars or this much delay
+    public static final int OUTPUT_BATCH_CHARS = 64 * 1024;
+    public static final long OUTPUT_BATCH_MILLIS = 16;
     
     public interface ExecutionCallback {
+        // Complete lines ending with '\n', possibly followed by a partial line that the
+        // next call continues (flushed after OutputPump's partial-line idle interval)
         void onOutput(String output);
+        
+        // Output the script wrote to stderr (compiler diagnostics, stack traces).
+        // Shown like regular output unless overridden.
+        default void onErrorOutput(String output) {
+            onOutput(output);
+        }
+        
+        // Same output with stream identity, read timestamp and line boundaries already
+        // located; override to avoid re-scanning
+        default void onOutputChunk(OutputChunk chunk) {
+            if (chunk.isStderr()) {
+                onErrorOutput(chunk.getText());
+            } else {
+                onOutput(chunk.getText());
+            }
+        }
+        
+        // All output read since the previous batch, both streams in read order.
+        // Override to handle a whole batch at once (e.g. one UI update per batch).
+        default void onOutputBatch(List<OutputChunk> chunks) {
+            for (OutputChunk chunk : chunks) {
+                onOutputChunk(chunk);
+            }
+        }
+        
         void onError(String error);
         void onComplete(int exitCode);
     }
     
     public ScriptExecutor() {
-        this.executorService = Executors.newCachedThreadPool();
+        this(DEFAULT_MAX_CONCURRENT_RUNS);
+    }
+    
+    public ScriptExecutor(int maxConcurrentRuns) {
+        this.maxConcurrentRuns = Math.max(1, maxConcurrentRuns);
+        // Only used for short blocking setup work and daemon warm-up, so it never needs more
+        // threads than there can be concurrent runs. Process waits use Process.onExit()
+        // and output is read by the shared OutputPump.
+        AtomicInteger threadCount = new AtomicInteger(1);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(this.maxConcurrentRuns, this.maxConcurrentRuns,
+            30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "script-executor-" + threadCount.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        pool.allowCoreThreadTimeOut(true); // Idle executors go away between bursts
+        this.executorService = pool;
+        // The setup never blocks on a process (startProcess waits with onExit), so one
+        // thread keeps up with any number of checks and compiles
+        ThreadPoolExecutor background = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "script-background");
+                thread.setDaemon(true);
+                return thread;
+            });
+        background.allowCoreThreadTimeOut(true);
+        this.backgroundService = background;
         try {
             this.tempDir = Files.createTempDirectory("script-runner");
+            this.compilationCache = new CompilationCache(tempDir.resolve("cache"), COMPILATION_CACHE_BYTES);
         } catch (IOException e) {
             throw new RuntimeException("Failed to create temp directory", e);
         }
     }
     
-    public void execute(String code, ScriptRunnerApp.ScriptLanguage language, ExecutionCallback callback) {
-        CompletableFuture.runAsync(() -> {
+    // Whether Kotlin runs also compile the script into the cache for the next run of the
+    // same code. Worth turning off when every script runs once, as in a batch.
+    public void setCacheKotlinCompiles(boolean cacheKotlinCompiles) {
+        this.cacheKotlinCompiles = cacheKotlinCompiles;
+    }
+    
+    // Start language-specific helpers ahead of the first run
+    public void prepare(ScriptRunnerApp.ScriptLanguage language) {
+        if (language == ScriptRunnerApp.ScriptLanguage.KOTLIN) {
+            kotlinDaemon.prewarm();
+        }
+    }
+    
+    public ExecutionHandle execute(String code, ScriptRunnerApp.ScriptLanguage language, ExecutionCallback callback) {
+        int runId = nextRunId.getAndIncrement();
+        ExecutionHandle handle = new ExecutionHandle(runId, language, tempDir.resolve("run-" + runId));
+        activeRuns.add(handle);
+        
+        // Bounded concurrency: runs wait in the queue (not on a thread) for a free slot
+        synchronized (this) {
+            pendingRuns.add(new PendingRun(handle, code, callback));
+        }
+        startQueuedRuns();
+        return handle;
+    }
+    
+    private void startQueuedRuns() {
+        while (true) {
+            PendingRun next;
+            synchronized (this) {
+                if (runningCount >= maxConcurrentRuns || pendingRuns.isEmpty()) {
+                    return;
+                }
+                next = pendingRuns.poll();
+                runningCount++;
+            }
+            start(next);
+        }
+    }
+    
+    private void start(PendingRun run) {
+        ExecutionHandle handle = run.handle;
+        // Coalesce output so a chatty script cannot flood the caller with tiny updates
+        ExecutionCallback callback = new OutputBatcher(run.callback, OUTPUT_BATCH_CHARS, OUTPUT_BATCH_MILLIS);
+        
+        CompletableFuture<Integer> result;
+        if (handle.isCancelled()) {
+            result = CompletableFuture.completedFuture(CANCELLED_EXIT_CODE);
+        } else {
+            handle.markStarted();
+            result = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return runScript(run.code, handle.getLanguage(), handle, callback);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, executorService).thenCompose(exitCode -> exitCode);
+        }
+        
+        result.whenComplete((exitCode, error) -> {
+            int finalExitCode = CANCELLED_EXIT_CODE;
             try {
-                // Create temporary script file
-                String fileName = "script." + language.getFileExtension();
-                Path scriptFile = tempDir.resolve(fileName);
-                Files.write(scriptFile, code.getBytes(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-                
-                // Build command
-                String[] command;
-                if (language == ScriptRunnerApp.ScriptLanguage.SWIFT) {
-                    command = new String[]{"/usr/bin/env", "swift", scriptFile.toString()};
-                } else if (language == ScriptRunnerApp.ScriptLanguage.KOTLIN) {
-                    command = new String[]{"kotlinc", "-script", scriptFile.toString()};
+                if (error == null) {
+                    finalExitCode = exitCode;
+                    callback.onComplete(exitCode);
                 } else {
-                    callback.onError("Unsupported language: " + language);
-                    return;
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    if (cause instanceof IOException) {
+                        callback.onError("Failed to execute script: " + cause.getMessage());
+                    } else {
+                        callback.onError("Unexpected error: " + cause.getMessage());
+                    }
                 }
-                
-                // Create process
-                ProcessBuilder pb = new ProcessBuilder(command);
-                pb.redirectErrorStream(true); // Merge stderr into stdout
-                
+            } finally {
                 synchronized (this) {
-                    currentProcess = pb.start();
+                    runningCount--;
                 }
-                
-                // Start output reader
-                startOutputReader(currentProcess, callback);
-                
-                // Wait for process completion
-                int exitCode = currentProcess.waitFor();
-                
-                synchronized (this) {
-                    currentProcess = null;
+                activeRuns.remove(handle);
+                handle.complete(finalExitCode);
+                CompilationCache.deleteRecursively(handle.getWorkDir());
+                startQueuedRuns();
+            }
+        });
+    }
+    
+    // Runs on an executor thread for the blocking setup; the returned future completes
+    // when the script's process (and its output) has finished.
+    private CompletableFuture<Integer> runScript(String code, ScriptRunnerApp.ScriptLanguage language, ExecutionHandle handle, ExecutionCallback callback)
+            throws IOException {
+        // Each run gets its own work directory so concurrent runs never share a script file
+        Files.createDirectories(handle.getWorkDir());
+        Path scriptFile = handle.getScriptFile();
+        Files.write(scriptFile, code.getBytes(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        
+        // Kotlin: previously compiled scripts run directly on the JVM,
+        // everything else goes through the warm daemon when it is available
+        if (language == ScriptRunnerApp.ScriptLanguage.KOTLIN) {
+            KotlinToolchain toolchain = getKotlinToolchain();
+            String key = toolchain == null ? null : kotlinCacheKey(code, toolchain);
+            Path classes = key == null ? null : compilationCache.acquire(key);
+            if (classes == null) {
+                return runKotlinUncached(code, handle, callback);
+            }
+            System.err.println("Using cached Kotlin classes " + key);
+            Path launchedMarker = handle.getWorkDir().resolve(KotlinScriptLauncher.LAUNCHED_MARKER);
+            return startProcess(kotlinClassCommand(classes, toolchain, launchedMarker), handle, callback)
+                .handle((exitCode, error) -> {
+                    compilationCache.release(key);
+                    // The script never started (missing runtime jar, stale classes): run it
+                    // the uncached way instead. Once it started, its result stands.
+                    boolean launched = error == null
+                        && Files.exists(launchedMarker);
+                    if (launched || handle.isCancelled()) {
+                        return error == null ? CompletableFuture.completedFuture(exitCode)
+                            : CompletableFuture.<Integer>failedFuture(error);
+                    }
+                    System.err.println("Cached Kotlin classes failed to launch, running uncached: "
+                        + (error != null ? error.getMessage() : "exit code " + exitCode));
+                    return CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return runKotlinUncached(code, handle, callback);
+                        } catch (IOException e) {
+                            throw new CompletionException(e);
+                        }
+                    }, executorService).thenCompose(exit -> exit);
+                })
+                .thenCompose(result -> result);
+        }
+        
+        // Build command
+        String[] command;
+        if (language == ScriptRunnerApp.ScriptLanguage.SWIFT) {
+            String toolchain = getSwiftToolchainVersion();
+            if (toolchain == null) {
+                // No swiftc available, let the interpreter handle it
+                command = new String[]{"/usr/bin/env", "swift", scriptFile.toString()};
+            } else {
+                // Reuse a swiftc-built executable for unchanged sources, compiling on a miss
+                String key = CompilationCache.key(code, language.name(), toolchain);
+                Path entry = compilationCache.acquire(key);
+                if (entry == null) {
+                    Path staged = compilationCache.newStagingPath(key);
+                    Files.createDirectories(staged);
+                    String[] compileCommand = {"/usr/bin/env", "swiftc", "-o", staged.resolve(SWIFT_BINARY).toString(), scriptFile.toString()};
+                    StderrRecorder compileOutput = new StderrRecorder(callback);
+                    return startProcess(compileCommand, handle, compileOutput).thenCompose(compileExit -> {
+                        if (compileExit != 0) {
+                            CompilationCache.deleteRecursively(staged.getParent());
+                            return CompletableFuture.completedFuture(compileExit);
+                        }
+                        try {
+                            // Warnings are kept with the executable and shown again on every hit.
+                            // This run's work directory is gone by then, so paths are made relative.
+                            String compileLog = compileOutput.getRecorded().replace(handle.getWorkDir() + File.separator, "");
+                            Files.writeString(staged.resolve(SWIFT_COMPILE_LOG), compileLog);
+                            Path compiled = compilationCache.commit(key, staged);
+                            return startProcess(new String[]{compiled.resolve(SWIFT_BINARY).toString()}, handle, callback)
+                                .whenComplete((exitCode, error) -> compilationCache.release(key));
+                        } catch (IOException e) {
+                            throw new CompletionException(e);
+                        }
+                    });
                 }
-                
-                callback.onComplete(exitCode);
-                
-            } catch (InterruptedException e) {
-                callback.onError("Script execution was interrupted");
-                Thread.currentThread().interrupt();
+                System.err.println("Using cached Swift binary " + key);
+                replayCompileLog(entry.resolve(SWIFT_COMPILE_LOG), callback);
+                return startProcess(new String[]{entry.resolve(SWIFT_BINARY).toString()}, handle, callback)
+                    .whenComplete((exitCode, error) -> compilationCache.release(key));
+            }
+        } else {
+            callback.onError("Unsupported language: " + language);
+            return CompletableFuture.completedFuture(-1);
+        }
+        
+        return startProcess(command, handle, callback);
+    }
+    
+    // Delivers the stderr of the compile that built a cached artifact as if swiftc had just
+    // printed it, diagnostics included, so a hit shows the same warnings as the first run
+    private static void replayCompileLog(Path log, ExecutionCallback callback) {
+        byte[] recorded;
+        try {
+            recorded = Files.readAllBytes(log);
+        } catch (IOException e) {
+            return;
+        }
+        if (recorded.length == 0) {
+            return;
+        }
+        OutputDecoder decoder = new OutputDecoder(OutputChunk.Source.STDERR, callback::onOutputChunk);
+        decoder.feed(recorded, 0, recorded.length);
+        decoder.finish();
+    }
+    
+    // Daemon run, or `kotlinc -script` when the daemon is unavailable. Also compiles the
+    // script into the cache so the next run of the same code can skip both.
+    private CompletableFuture<Integer> runKotlinUncached(String code, ExecutionHandle handle, ExecutionCallback callback)
+            throws IOException {
+        compileKotlinInBackground(code);
+        try {
+            Process process = kotlinDaemon.run(handle);
+            if (process == null) {
+                return CompletableFuture.completedFuture(CANCELLED_EXIT_CODE);
+            }
+            return watchProcess(process, callback);
+        } catch (KotlinDaemon.DaemonUnavailableException e) {
+            System.err.println("Kotlin daemon unavailable, using kotlinc: " + e.getMessage());
+        }
+        return startProcess(new String[]{"kotlinc", "-script", handle.getScriptFile().toString()}, handle, callback);
+    }
+    
+    // Compiles the code for its diagnostics only, without running it: `swiftc -typecheck`,
+    // or kotlinc into a scratch directory since kotlinc has no check-only mode. Checks
+    // bypass the run queue and get their own work directory; output goes to the callback
+    // as for a run, with the diagnostics attached to the chunks. Cancel the handle once
+    // the code it checks is stale. Completes with -1 at once if there is no compiler.
+    public ExecutionHandle typecheck(String code, ScriptRunnerApp.ScriptLanguage language, ExecutionCallback callback) {
+        int checkId = nextCheckId.getAndIncrement();
+        ExecutionHandle handle = new ExecutionHandle(checkId, language, tempDir.resolve("check-" + checkId));
+        activeChecks.add(handle);
+        handle.markStarted();
+        CompletableFuture.supplyAsync(() -> {
+            String[] command = typecheckCommand(language, handle);
+            if (command == null || handle.isCancelled()) {
+                return CompletableFuture.completedFuture(CANCELLED_EXIT_CODE);
+            }
+            try {
+                Files.createDirectories(handle.getWorkDir());
+                Files.write(handle.getScriptFile(), code.getBytes());
             } catch (IOException e) {
-                callback.onError("Failed to execute script: " + e.getMessage());
-            } catch (Exception e) {
-                callback.onError("Unexpected error: " + e.getMessage());
+                throw new CompletionException(e);
+            }
+            return startProcess(command, handle, callback);
+        }, backgroundService).thenCompose(exitCode -> exitCode).whenComplete((exitCode, error) -> {
+            int finalExitCode = CANCELLED_EXIT_CODE;
+            try {
+                if (error == null) {
+                    finalExitCode = exitCode;
+                } else {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    callback.onError("Failed to type-check script: " + cause.getMessage());
+                }
+            } finally {
+                activeChecks.remove(handle);
+                handle.complete(finalExitCode);
+                CompilationCache.deleteRecursively(handle.getWorkDir());
+            }
+        });
+        return handle;
+    }
+    
+    // Command checking the handle's script file, or null if the compiler is not installed
+    private String[] typecheckCommand(ScriptRunnerApp.ScriptLanguage language, ExecutionHandle handle) {
+        String scriptFile = handle.getScriptFile().toString();
+        if (language == ScriptRunnerApp.ScriptLanguage.SWIFT) {
+            return getSwiftToolchainVersion() == null ? null
+                : new String[]{"/usr/bin/env", "swiftc", "-typecheck", scriptFile};
+        }
+        if (getKotlinToolchain() == null) {
+            return null;
+        }
+        // The classes land in the work directory and are deleted with it
+        return new String[]{"kotlinc", "-Xallow-any-scripts-in-source-roots", scriptFile,
+            "-d", handle.getWorkDir().resolve("classes").toString()};
+    }
+    
+    private String kotlinCacheKey(String code, KotlinToolchain toolchain) {
+        return CompilationCache.key(code, ScriptRunnerApp.ScriptLanguage.KOTLIN.name(), toolchain.version, toolchain.runtimeClasspath);
+    }
+    
+    // Command launching an already compiled script with plain `java`
+    private static String[] kotlinClassCommand(Path classes, KotlinToolchain toolchain, Path launchedMarker) {
+        return new String[]{
+            Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+            "-cp", classes + File.pathSeparator + toolchain.runtimeClasspath,
+            KotlinScriptLauncher.class.getName(), launchedMarker.toString(), KOTLIN_SCRIPT_CLASS
+        };
+    }
+    
+    // Compiles the script into the cache without blocking the current run. Each compile is
+    // a whole kotlinc JVM, so they run one at a time in the order requested, and scripts
+    // beyond the first few waiting are not cached.
+    private void compileKotlinInBackground(String code) {
+        if (!cacheKotlinCompiles) {
+            return;
+        }
+        KotlinToolchain toolchain = getKotlinToolchain();
+        if (toolchain == null) {
+            return;
+        }
+        String key = kotlinCacheKey(code, toolchain);
+        synchronized (kotlinCompilesInFlight) {
+            if (kotlinCompilesInFlight.size() >= MAX_QUEUED_KOTLIN_COMPILES || !kotlinCompilesInFlight.add(key)) {
+                return;
             }
-        }, executorService);
+            // Queued behind the previous compile whether or not that one succeeded
+            lastKotlinCompile = lastKotlinCompile.handle((ignored, error) -> null)
+                .thenComposeAsync(ignored -> compileKotlin(key, code), backgroundService)
+                .whenComplete((ignored, error) -> {
+                    synchronized (kotlinCompilesInFlight) {
+                        kotlinCompilesInFlight.remove(key);
+                    }
+                });
+        }
     }
     
-    private void startOutputReader(Process process, ExecutionCallback callback) {
-        // Read stdout/stderr in separate thread
-        Thread outputReader = new Thread(() -> {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    // Pass output directly - UI will handle clickable parsing
-                    callback.onOutput(line + "\n");
+    private CompletableFuture<Void> compileKotlin(String key, String code) {
+        Path staged = null;
+        try {
+            staged = compilationCache.newStagingPath(key);
+            // Own copy of the source: the shared script file may be rewritten by the next run
+            Path source = staged.resolveSibling(KOTLIN_SCRIPT_FILE);
+            Files.write(source, code.getBytes());
+            Path classes = staged;
+            // kotlinc 1.9+ only compiles .kts outside of -script mode with this flag
+            Process process = new ProcessBuilder("kotlinc", "-Xallow-any-scripts-in-source-roots",
+                    source.toString(), "-d", classes.toString())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+            kotlinCompileProcesses.add(process);
+            // shutdown() may have destroyed the others just before this one was registered
+            if (backgroundService.isShutdown()) {
+                process.destroyForcibly();
+            }
+            return process.onExit().thenApply(finished -> {
+                kotlinCompileProcesses.remove(finished);
+                try {
+                    if (finished.exitValue() == 0 && Files.isDirectory(classes)) {
+                        Files.delete(source);
+                        compilationCache.commit(key, classes);
+                        compilationCache.release(key);
+                        return null;
+                    }
+                } catch (IOException e) {
+                    System.err.println("Background Kotlin compilation failed: " + e.getMessage());
                 }
+                CompilationCache.deleteRecursively(classes.getParent());
+                return null;
+            });
+        } catch (IOException e) {
+            System.err.println("Background Kotlin compilation failed: " + e.getMessage());
+            if (staged != null) {
+                CompilationCache.deleteRecursively(staged.getParent());
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+    
+    private KotlinToolchain getKotlinToolchain() {
+        synchronized (toolchainLock) {
+            if (kotlinToolchain == null) {
+                kotlinToolchain = KotlinToolchain.detect();
+            }
+            return kotlinToolchain.version.isEmpty() ? null : kotlinToolchain;
+        }
+    }
+    
+    // Compiler version and runtime classpath, both part of the Kotlin cache key
+    private static class KotlinToolchain {
+        final String version;
+        final String runtimeClasspath;
+        
+        KotlinToolchain(String version, String runtimeClasspath) {
+            this.version = version;
+            this.runtimeClasspath = runtimeClasspath;
+        }
+        
+        static KotlinToolchain detect() {
+            Path lib = KotlinDaemon.findKotlinLib();
+            if (lib == null) {
+                return new KotlinToolchain("", "");
+            }
+            // The launcher comes first; the script class itself is added per run
+            StringBuilder classpath = new StringBuilder();
+            Path launcher = KotlinDaemon.ownClasspathEntry();
+            if (launcher != null) {
+                classpath.append(launcher);
+            }
+            for (String jar : new String[]{"kotlin-stdlib.jar", "kotlin-script-runtime.jar", "kotlin-reflect.jar"}) {
+                Path jarPath = lib.resolve(jar);
+                if (Files.exists(jarPath)) {
+                    if (classpath.length() > 0) {
+                        classpath.append(File.pathSeparator);
+                    }
+                    classpath.append(jarPath);
+                }
+            }
+            try {
+                Process process = new ProcessBuilder("kotlinc", "-version")
+                    .redirectErrorStream(true)
+                    .start();
+                String version = new String(process.getInputStream().readAllBytes()).trim();
+                return new KotlinToolchain(process.waitFor() == 0 ? version : "", classpath.toString());
             } catch (IOException e) {
-                if (!Thread.currentThread().isInterrupted()) {
-                    callback.onError("Error reading output: " + e.getMessage());
+                return new KotlinToolchain("", "");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new KotlinToolchain("", "");
+            }
+        }
+    }
+    
+    private String getSwiftToolchainVersion() {
+        synchronized (toolchainLock) {
+            if (swiftToolchainVersion == null) {
+                try {
+                    Process process = new ProcessBuilder("/usr/bin/env", "swiftc", "--version")
+                        .redirectErrorStream(true)
+                        .start();
+                    String version = new String(process.getInputStream().readAllBytes()).trim();
+                    swiftToolchainVersion = process.waitFor() == 0 ? version : "";
+                } catch (IOException e) {
+                    swiftToolchainVersion = "";
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
                 }
             }
-        });
+            return swiftToolchainVersion.isEmpty() ? null : swiftToolchainVersion;
+        }
+    }
+    
+    // Starts the process and completes with its exit code once the process has exited
+    // and all of its output has been delivered
+    private CompletableFuture<Integer> startProcess(String[] command, ExecutionHandle handle, ExecutionCallback callback) {
+        // Scripts run in the app's working directory, so relative paths they write persist
+        ProcessBuilder pb = new ProcessBuilder(command);
         
-        outputReader.setDaemon(true);
-        outputReader.start();
+        Process process;
+        try {
+            process = pb.start();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (!handle.attach(process)) {
+            return CompletableFuture.completedFuture(CANCELLED_EXIT_CODE);
+        }
+        return watchProcess(process, callback);
     }
     
-    private boolean containsErrorLocation(String line) {
-        // Check for Swift error pattern: filename:line:column: error/warning
-        // Check for Kotlin error pattern: filename:line:column: error/warning
-        return line.matches(".*\\w+\\.(swift|kts):\\d+:\\d+:\\s+(error|warning|note):.*");
+    // Completes with the exit code once the process and its output have finished
+    private CompletableFuture<Integer> watchProcess(Process process, ExecutionCallback callback) {
+        // Both streams are read by the shared pump; no reader thread per process.
+        // Chunks carry their stream and read time, so consumers can tell them apart.
+        CompletableFuture<Void> stdoutDone = OutputPump.shared().register(
+            process.getInputStream(),
+            OutputChunk.Source.STDOUT,
+            () -> !process.isAlive(),
+            callback::onOutputChunk,
+            e -> callback.onError("Error reading output: " + e.getMessage()));
+        CompletableFuture<Void> stderrDone = OutputPump.shared().register(
+            process.getErrorStream(),
+            OutputChunk.Source.STDERR,
+            () -> !process.isAlive(),
+            callback::onOutputChunk,
+            e -> callback.onError("Error reading error output: " + e.getMessage()));
+        
+        return process.onExit().thenCombine(CompletableFuture.allOf(stdoutDone, stderrDone), (exited, ignored) -> exited.exitValue());
     }
     
-    private String makeErrorLocationClickable(String line) {
-        // Add special markers that can be detected by the UI for clickable links
-        // Pattern: filename:line:column: type: message
-        if (line.matches(".*\\w+\\.(swift|kts):\\d+:\\d+:\\s+(error|warning|note):.*")) {
-            // Extract the location part (filename:line:column)
-            String[] parts = line.split(":", 4);
-            if (parts.length >= 3) {
-                try {
-                    String filename = parts[0].trim();
-                    int lineNum = Integer.parseInt(parts[1].trim());
-                    int colNum = Integer.parseInt(parts[2].trim());
-                    
-                    // Store clickable info invisibly (could be stored in a map)
-                    // For now, add minimal marker at start of line
-                    return String.format("🔗 %s", line);
-                } catch (NumberFormatException e) {
-                    // If parsing fails, return original line
-                    return line;
+    // Passes everything on and keeps a copy of the stderr text
+    private static class StderrRecorder implements ExecutionCallback {
+        private final ExecutionCallback target;
+        private final StringBuilder recorded = new StringBuilder();
+        
+        StderrRecorder(ExecutionCallback target) {
+            this.target = target;
+        }
+        
+        synchronized String getRecorded() {
+            return recorded.toString();
+        }
+        
+        @Override
+        public void onOutput(String output) {
+            target.onOutput(output);
+        }
+        
+        @Override
+        public void onOutputChunk(OutputChunk chunk) {
+            if (chunk.isStderr()) {
+                synchronized (this) {
+                    recorded.append(chunk.getText());
                 }
             }
+            target.onOutputChunk(chunk);
+        }
+        
+        @Override
+        public void onError(String error) {
+            target.onError(error);
+        }
+        
+        @Override
+        public void onComplete(int exitCode) {
+            target.onComplete(exitCode);
+        }
+    }
+    
+    private static class PendingRun {
+        final ExecutionHandle handle;
+        final String code;
+        final ExecutionCallback callback;
+        
+        PendingRun(ExecutionHandle handle, String code, ExecutionCallback callback) {
+            this.handle = handle;
+            this.code = code;
+            this.callback = callback;
         }
-        return line;
     }
     
-    public synchronized void stop() {
-        if (currentProcess != null && currentProcess.isAlive()) {
-            currentProcess.destroyForcibly();
-            currentProcess = null;
+    // Cancels every run that is queued or in flight
+    public void stop() {
+        for (ExecutionHandle handle : activeRuns) {
+            handle.cancel();
         }
     }
     
+    public int getActiveRunCount() {
+        return activeRuns.size();
+    }
+    
+    // Scratch directory owned by this executor; deleted on shutdown()
+    public Path getTempDir() {
+        return tempDir;
+    }
+    
     public void shutdown() {
         stop();
+        for (ExecutionHandle check : activeChecks) {
+            check.cancel();
+        }
+        kotlinDaemon.shutdown();
         executorService.shutdown();
+        backgroundService.shutdown();
+        for (Process compile : kotlinCompileProcesses) {
+            compile.destroyForcibly();
+        }
         
         // Cleanup temp directory
         try {
@@ -1,34 +1,54 @@
 package com.scriptrunner;
 
+import javafx.animation.PauseTransition;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Orientation;
+import javafx.geometry.Pos;
+import javafx.scene.Cursor;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
-import javafx.scene.text.Text;
-import javafx.scene.text.TextFlow;
 import javafx.scene.paint.Color;
-import javafx.scene.Cursor;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import org.fxmisc.richtext.CodeArea;
 import org.fxmisc.richtext.LineNumberFactory;
 
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
 public class ScriptRunnerApp extends Application {
     
     private CodeArea codeEditor;
-    private TextArea outputArea;
-    private TextFlow outputFlow;
-    private ScrollPane outputScrollPane;
+    private TabPane outputTabs;
     private Button runButton;
     private Button stopButton;
     private Label statusLabel;
     private Label exitCodeLabel;
     private ComboBox<ScriptLanguage> languageComboBox;
     private ScriptExecutor scriptExecutor;
+    private SyntaxHighlighter syntaxHighlighter;
+    
+    // Diagnostics of the latest run or type-check, shown as markers in the editor gutter
+    private final DiagnosticsIndex diagnosticsIndex = new DiagnosticsIndex();
+    private IntFunction<Node> lineNumberFactory;
+    private boolean gutterRefreshPending;
+    private RunTab latestRun;
+    // Start offset of every editor line, updated on each edit
+    private final LineOffsetIndex lineOffsets = new LineOffsetIndex();
+    
+    // Typing pause after which the editor text is type-checked in the background
+    private static final long TYPECHECK_DELAY_MILLIS = 750;
+    private final PauseTransition typecheckDelay = new PauseTransition(Duration.millis(TYPECHECK_DELAY_MILLIS));
+    // Check of the current text, null if none is running
+    private ExecutionHandle typecheck;
     
     public enum ScriptLanguage {
         SWIFT("Swift", "swift", "/usr/bin/env swift"),
@@ -48,6 +68,16 @@ public class ScriptRunnerApp extends Application {
         public String getFileExtension() { return fileExtension; }
         public String getCommand() { return command; }
         
+        // Language for a script file name, or null if the extension is not supported
+        public static ScriptLanguage fromFileName(String fileName) {
+            for (ScriptLanguage language : values()) {
+                if (fileName.endsWith("." + language.fileExtension)) {
+                    return language;
+                }
+            }
+            return null;
+        }
+        
         @Override
         public String toString() { return displayName; }
     }
@@ -81,7 +111,7 @@ public class ScriptRunnerApp extends Application {
         primaryStage.setScene(scene);
         primaryStage.setOnCloseRequest(e -> {
             if (scriptExecutor != null) {
-                scriptExecutor.stop();
+                scriptExecutor.shutdown();
             }
             Platform.exit();
         });
@@ -91,20 +121,17 @@ public class ScriptRunnerApp extends Application {
     private void initializeComponents() {
         // Code editor with line numbers
         codeEditor = new CodeArea();
-        codeEditor.setParagraphGraphicFactory(LineNumberFactory.get(codeEditor));
+        lineNumberFactory = LineNumberFactory.get(codeEditor);
+        codeEditor.setParagraphGraphicFactory(this::createGutter);
+        diagnosticsIndex.addListener(this::scheduleGutterRefresh);
+        codeEditor.plainTextChanges().subscribe(change ->
+            lineOffsets.replace(change.getPosition(), change.getRemoved(), change.getInserted()));
         codeEditor.setStyle("-fx-font-family: 'Courier New', monospace; -fx-font-size: 14px;");
         codeEditor.getStyleClass().add("code-area");
         
-        // Output area - keep TextArea for now, add TextFlow as alternative
-        outputArea = new TextArea();
-        outputArea.setEditable(false);
-        outputArea.setStyle("-fx-font-family: 'Courier New', monospace; -fx-font-size: 12px;");
-        
-        // Rich text output flow for clickable errors
-        outputFlow = new TextFlow();
-        outputFlow.setStyle("-fx-font-family: 'Courier New', monospace; -fx-font-size: 12px;");
-        outputScrollPane = new ScrollPane(outputFlow);
-        outputScrollPane.setFitToWidth(true);
+        // One output tab per run so concurrent runs stay separate
+        outputTabs = new TabPane();
+        outputTabs.setTabClosingPolicy(TabPane.TabClosingPolicy.ALL_TABS);
         
         // Controls
         languageComboBox = new ComboBox<>();
@@ -126,24 +153,26 @@ public class ScriptRunnerApp extends Application {
         // Initialize script executor
         scriptExecutor = new ScriptExecutor();
         
-        // Clickable error navigation now handled directly in TextFlow
+        // Clickable error navigation handled by each run's OutputPane
+        
+        // Highlights incrementally as the user types
+        syntaxHighlighter = new SyntaxHighlighter(codeEditor, languageComboBox.getValue());
         
-        // Apply initial syntax highlighting
-        applySyntaxHighlighting();
+        // Diagnostics show up while typing, from a compile-only check after each pause
+        typecheckDelay.setOnFinished(e -> startTypecheck());
+        codeEditor.plainTextChanges().subscribe(change -> scheduleTypecheck());
     }
     
     private void setupEventHandlers() {
         runButton.setOnAction(e -> runScript());
         stopButton.setOnAction(e -> stopScript());
+        outputTabs.getSelectionModel().selectedItemProperty().addListener((obs, oldTab, newTab) -> updateControls());
         
         // Add syntax highlighting when language changes
         languageComboBox.setOnAction(e -> {
-            applySyntaxHighlighting();
-        });
-        
-        // Apply syntax highlighting as user types (with small delay to avoid excessive calls)
-        codeEditor.textProperty().addListener((obs, oldText, newText) -> {
-            Platform.runLater(this::applySyntaxHighlighting);
+            syntaxHighlighter.setLanguage(languageComboBox.getValue());
+            scriptExecutor.prepare(languageComboBox.getValue());
+            scheduleTypecheck();
         });
     }
     
@@ -178,8 +207,8 @@ public class ScriptRunnerApp extends Application {
         outputPane.setPadding(new Insets(10));
         Label outputLabel = new Label("Output");
         outputLabel.setStyle("-fx-font-size: 14px; -fx-font-weight: bold;");
-        outputPane.getChildren().addAll(outputLabel, outputScrollPane);
-        VBox.setVgrow(outputScrollPane, javafx.scene.layout.Priority.ALWAYS);
+        outputPane.getChildren().addAll(outputLabel, outputTabs);
+        VBox.setVgrow(outputTabs, javafx.scene.layout.Priority.ALWAYS);
         
         splitPane.getItems().addAll(editorPane, outputPane);
         splitPane.setDividerPositions(0.5);
@@ -191,163 +220,265 @@ public class ScriptRunnerApp extends Application {
     }
     
     private void runScript() {
-        String code = codeEditor.getText().trim();
-        if (code.isEmpty()) {
+        // Untrimmed, so compiler line numbers match the editor's lines
+        String code = codeEditor.getText();
+        if (code.isBlank()) {
             showStatus("No script to run", false);
             return;
         }
         
         ScriptLanguage language = languageComboBox.getValue();
-        clearOutput();
-        setRunning(true);
-        showStatus("Running...", false);
-        exitCodeLabel.setText("");
+        OutputPane outputPane = new OutputPane(this::navigateToLocation, scriptExecutor.getTempDir());
+        RunTab runTab = new RunTab(outputPane);
+        
+        // The gutter follows the newest run
+        latestRun = runTab;
+        diagnosticsIndex.clear();
+        outputPane.setDiagnosticListener(diagnostic -> {
+            if (latestRun == runTab && diagnostic.getFile().equals(runTab.handle.getScriptFile().getFileName().toString())) {
+                diagnosticsIndex.add(diagnostic);
+            }
+        });
         
-        scriptExecutor.execute(code, language, new ScriptExecutor.ExecutionCallback() {
+        runTab.handle = scriptExecutor.execute(code, language, new ScriptExecutor.ExecutionCallback() {
+            // OutputPane queues appends and applies them once per frame,
+            // so no Platform.runLater per call
             @Override
             public void onOutput(String output) {
-                Platform.runLater(() -> {
-                    addOutputText(output);
-                    // Keep TextArea updated for compatibility
-                    outputArea.appendText(output);
-                    outputArea.positionCaret(outputArea.getLength());
-                });
+                outputPane.appendOutput(output);
+            }
+            
+            @Override
+            public void onErrorOutput(String output) {
+                outputPane.appendErrorOutput(output);
+            }
+            
+            // Chunks carry the diagnostics parsed on the reader side
+            @Override
+            public void onOutputChunk(OutputChunk chunk) {
+                outputPane.appendChunk(chunk);
             }
             
             @Override
             public void onError(String error) {
-                Platform.runLater(() -> {
-                    addOutputText("[ERROR] " + error);
-                    // Keep TextArea updated for compatibility
-                    outputArea.appendText("[ERROR] " + error);
-                    outputArea.positionCaret(outputArea.getLength());
-                });
+                outputPane.appendOutput("[ERROR] " + error + "\n");
             }
             
             @Override
             public void onComplete(int exitCode) {
                 Platform.runLater(() -> {
-                    setRunning(false);
-                    if (exitCode == 0) {
-                        showStatus("Completed successfully", false);
-                        exitCodeLabel.setText("✓ Exit: 0");
-                        exitCodeLabel.setStyle("-fx-text-fill: green; -fx-font-weight: bold;");
-                    } else {
-                        showStatus("Completed with errors", true);
-                        exitCodeLabel.setText("✗ Exit: " + exitCode);
-                        exitCodeLabel.setStyle("-fx-text-fill: red; -fx-font-weight: bold;");
-                    }
+                    runTab.finish(exitCode);
+                    updateControls();
                 });
             }
         });
+        
+        // Also covers runs that end with onError instead of onComplete
+        runTab.handle.onExit().thenAccept(exitCode -> Platform.runLater(() -> {
+            runTab.finish(exitCode);
+            updateControls();
+        }));
+        
+        runTab.tab = new Tab("Run #" + runTab.handle.getId() + " (" + language + ")", outputPane.getNode());
+        runTab.tab.setUserData(runTab);
+        runTab.tab.setOnClosed(e -> {
+            runTab.handle.cancel();
+            outputPane.dispose();
+        });
+        runTab.updateTitle();
+        outputTabs.getTabs().add(runTab.tab);
+        outputTabs.getSelectionModel().select(runTab.tab);
+        updateControls();
     }
     
-    private void stopScript() {
-        scriptExecutor.stop();
-        setRunning(false);
-        showStatus("Stopped", false);
-        Platform.runLater(() -> {
-            addOutputText("\n[PROCESS TERMINATED]\n");
-            outputArea.appendText("\n[PROCESS TERMINATED]\n");
+    // The text changed: a check of the old text is stale, so it is cancelled and a new
+    // one starts once typing pauses
+    private void scheduleTypecheck() {
+        if (typecheck != null) {
+            typecheck.cancel();
+            typecheck = null;
+        }
+        typecheckDelay.playFromStart();
+    }
+    
+    private void startTypecheck() {
+        String code = codeEditor.getText();
+        if (code.isBlank()) {
+            return;
+        }
+        // Collected on the reader side, read on the FX thread once the check has exited
+        ConcurrentLinkedQueue<Diagnostic> found = new ConcurrentLinkedQueue<>();
+        ScriptLanguage language = languageComboBox.getValue();
+        ExecutionHandle handle = scriptExecutor.typecheck(code, language, new ScriptExecutor.ExecutionCallback() {
+            @Override
+            public void onOutput(String output) {
+                // Only the diagnostics are shown
+            }
+            
+            @Override
+            public void onOutputChunk(OutputChunk chunk) {
+                for (int i = 0; i < chunk.getLineCount(); i++) {
+                    if (chunk.getDiagnostic(i) != null) {
+                        found.add(chunk.getDiagnostic(i));
+                    }
+                }
+            }
+            
+            @Override
+            public void onError(String error) {
+                System.err.println(error);
+            }
+            
+            @Override
+            public void onComplete(int exitCode) {
+            }
         });
+        typecheck = handle;
+        handle.onExit().thenAccept(exitCode -> Platform.runLater(() -> finishTypecheck(handle, exitCode, found)));
     }
     
-    private void setRunning(boolean running) {
-        runButton.setDisable(running);
-        stopButton.setDisable(!running);
-        languageComboBox.setDisable(running);
+    // The check's diagnostics replace the gutter markers, unless the text changed since
+    // or there was no compiler to run. A run still in progress stops feeding the gutter.
+    private void finishTypecheck(ExecutionHandle handle, int exitCode, Collection<Diagnostic> found) {
+        if (handle != typecheck) {
+            return;
+        }
+        typecheck = null;
+        if (exitCode < 0) {
+            return;
+        }
+        latestRun = null;
+        String scriptFile = handle.getScriptFile().getFileName().toString();
+        diagnosticsIndex.clear();
+        for (Diagnostic diagnostic : found) {
+            if (diagnostic.getFile().equals(scriptFile)) {
+                diagnosticsIndex.add(diagnostic);
+            }
+        }
     }
     
-    private void showStatus(String message, boolean isError) {
-        statusLabel.setText(message);
-        if (isError) {
-            statusLabel.setStyle("-fx-font-weight: bold; -fx-text-fill: red;");
-        } else {
-            statusLabel.setStyle("-fx-font-weight: bold; -fx-text-fill: black;");
+    private void stopScript() {
+        RunTab runTab = getSelectedRun();
+        if (runTab == null || !runTab.isRunning()) {
+            return;
         }
+        runTab.handle.cancel();
+        runTab.stopped = true;
+        runTab.outputPane.appendOutput("\n[PROCESS TERMINATED]\n");
+        updateControls();
     }
     
-    private void applySyntaxHighlighting() {
-        ScriptLanguage language = languageComboBox.getValue();
-        if (language != null) {
-            System.out.println("Applying syntax highlighting for: " + language);
-            SyntaxHighlighter.highlight(codeEditor, language);
+    private RunTab getSelectedRun() {
+        Tab selected = outputTabs.getSelectionModel().getSelectedItem();
+        return selected == null ? null : (RunTab) selected.getUserData();
+    }
+    
+    // Stop/status/exit code reflect the selected run; Run stays enabled for concurrent runs
+    private void updateControls() {
+        RunTab selected = getSelectedRun();
+        stopButton.setDisable(selected == null || !selected.isRunning());
+        
+        long running = outputTabs.getTabs().stream()
+            .map(tab -> (RunTab) tab.getUserData())
+            .filter(RunTab::isRunning)
+            .count();
+        
+        if (selected == null) {
+            showStatus(running > 0 ? "Running " + running + "..." : "Ready", false);
+            exitCodeLabel.setText("");
+        } else if (selected.isRunning()) {
+            showStatus(running > 1 ? "Running " + running + "..." : "Running...", false);
+            exitCodeLabel.setText("");
+        } else if (selected.stopped) {
+            showStatus("Stopped", false);
+            exitCodeLabel.setText("");
+        } else if (selected.exitCode == 0) {
+            showStatus("Completed successfully", false);
+            exitCodeLabel.setText("✓ Exit: 0");
+            exitCodeLabel.setStyle("-fx-text-fill: green; -fx-font-weight: bold;");
+        } else {
+            showStatus("Completed with errors", true);
+            exitCodeLabel.setText("✗ Exit: " + selected.exitCode);
+            exitCodeLabel.setStyle("-fx-text-fill: red; -fx-font-weight: bold;");
         }
     }
     
-    private void clearOutput() {
-        outputFlow.getChildren().clear();
-        // Keep TextArea for compatibility during transition
-        outputArea.clear();
+    // Line number plus a diagnostic marker; the lookup is O(1) per visible paragraph
+    private Node createGutter(int paragraph) {
+        Label marker = new Label();
+        marker.setMinWidth(14);
+        marker.setAlignment(Pos.CENTER);
+        Diagnostic.Severity severity = diagnosticsIndex.getSeverity(paragraph + 1);
+        if (severity != null) {
+            marker.setText("●");
+            marker.setTextFill(severity == Diagnostic.Severity.ERROR ? Color.RED
+                : severity == Diagnostic.Severity.WARNING ? Color.ORANGE : Color.GRAY);
+            marker.setTooltip(new Tooltip(diagnosticsIndex.get(paragraph + 1).stream()
+                .map(diagnostic -> diagnostic.getSeverity().name().toLowerCase() + ": " + diagnostic.getMessage())
+                .collect(Collectors.joining("\n"))));
+            // Clicking a marker goes to the location, like a link in the output
+            Diagnostic first = diagnosticsIndex.get(paragraph + 1).get(0);
+            marker.setCursor(Cursor.HAND);
+            marker.setOnMouseClicked(e -> navigateToLocation(first.getLine(), first.getColumn()));
+        }
+        HBox gutter = new HBox(lineNumberFactory.apply(paragraph), marker);
+        gutter.setAlignment(Pos.CENTER_LEFT);
+        return gutter;
     }
     
-    private void addOutputText(String text) {
-        // Parse for error patterns and create clickable links
-        String[] lines = text.split("\n");
-        
-        for (String line : lines) {
-            if (containsErrorLocation(line)) {
-                addClickableErrorLine(line);
-            } else {
-                addNormalText(line + "\n");
-            }
+    // Markers are rebuilt at most once per pulse, however many diagnostics arrive
+    private void scheduleGutterRefresh() {
+        if (gutterRefreshPending) {
+            return;
         }
-        
-        // Scroll to bottom
+        gutterRefreshPending = true;
         Platform.runLater(() -> {
-            outputScrollPane.setVvalue(1.0);
+            gutterRefreshPending = false;
+            // A new factory instance makes the editor recreate the visible gutters
+            codeEditor.setParagraphGraphicFactory(paragraph -> createGutter(paragraph));
         });
     }
     
-    private boolean containsErrorLocation(String line) {
-        // Check for compiler error patterns
-        return line.matches(".*(\\w+\\.(swift|kts)):(\\d+):(\\d+):\\s+(error|warning|note):.*");
-    }
-    
-    private void addClickableErrorLine(String line) {
-        // Parse error line: filename:line:column: type: message
-        java.util.regex.Pattern pattern = java.util.regex.Pattern.compile(
-            "(.*?)(\\w+\\.(swift|kts)):(\\d+):(\\d+):(\\s+(error|warning|note):.*)"
-        );
-        java.util.regex.Matcher matcher = pattern.matcher(line);
-        
-        if (matcher.find()) {
-            String prefix = matcher.group(1);
-            String filename = matcher.group(2);
-            int lineNum = Integer.parseInt(matcher.group(4));
-            int colNum = Integer.parseInt(matcher.group(5));
-            String suffix = matcher.group(6);
-            
-            // Add prefix text
-            if (!prefix.isEmpty()) {
-                addNormalText(prefix);
+    // UI state of one run, attached to its output tab
+    private static class RunTab {
+        final OutputPane outputPane;
+        ExecutionHandle handle;
+        Tab tab;
+        Integer exitCode;
+        boolean stopped;
+        
+        RunTab(OutputPane outputPane) {
+            this.outputPane = outputPane;
+        }
+        
+        boolean isRunning() {
+            return exitCode == null;
+        }
+        
+        void finish(int code) {
+            if (exitCode == null) {
+                exitCode = code;
+                updateTitle();
             }
-            
-            // Add clickable filename:line:column part
-            Text clickableText = new Text(filename + ":" + lineNum + ":" + colNum);
-            clickableText.setFill(Color.BLUE);
-            clickableText.setUnderline(true);
-            clickableText.setCursor(Cursor.HAND);
-            clickableText.setOnMouseClicked(e -> {
-                System.out.println("Clicked error location: line=" + lineNum + ", col=" + colNum);
-                navigateToLocation(lineNum, colNum);
-            });
-            
-            // Add suffix (error message)
-            Text suffixText = new Text(suffix);
-            suffixText.setFill(Color.DARKRED);
-            
-            outputFlow.getChildren().addAll(clickableText, suffixText);
-            addNormalText("\n");
-        } else {
-            addNormalText(line + "\n");
+        }
+        
+        void updateTitle() {
+            if (tab == null) {
+                return;
+            }
+            String base = tab.getText().replaceFirst("^[●✓✗■] ", "");
+            String marker = isRunning() ? "●" : stopped ? "■" : exitCode == 0 ? "✓" : "✗";
+            tab.setText(marker + " " + base);
         }
     }
     
-    private void addNormalText(String text) {
-        Text normalText = new Text(text);
-        normalText.setFill(Color.BLACK);
-        outputFlow.getChildren().add(normalText);
+    private void showStatus(String message, boolean isError) {
+        statusLabel.setText(message);
+        if (isError) {
+            statusLabel.setStyle("-fx-font-weight: bold; -fx-text-fill: red;");
+        } else {
+            statusLabel.setStyle("-fx-font-weight: bold; -fx-text-fill: black;");
+        }
     }
     
     private void navigateToLocation(int line, int column) {
@@ -358,21 +489,10 @@ public class ScriptRunnerApp extends Application {
             
             System.out.println("Navigating to line " + line + ", column " + column);
             
-            // Get the total number of lines
-            int totalLines = codeEditor.getParagraphs().size();
-            if (targetLine >= totalLines) {
-                targetLine = totalLines - 1;
-            }
-            
-            // Calculate the absolute position
-            int position = 0;
-            for (int i = 0; i < targetLine; i++) {
-                position += codeEditor.getParagraph(i).length() + 1; // +1 for newline
-            }
-            
-            // Add column offset, but don't exceed line length
-            int lineLength = codeEditor.getParagraph(targetLine).length();
-            position += Math.min(targetColumn, lineLength);
+            // Line offsets come from the incremental index, not a walk over the paragraphs
+            targetLine = Math.min(targetLine, lineOffsets.getLineCount() - 1);
+            int lineLength = lineOffsets.getLineLength(targetLine);
+            int position = lineOffsets.getOffset(targetLine, targetColumn);
             
             // Move caret and scroll to position
             codeEditor.moveTo(position);
@@ -390,6 +510,9 @@ public class ScriptRunnerApp extends Application {
     }
     
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals(BatchRunner.BATCH_FLAG)) {
+            System.exit(BatchRunner.run(java.util.Arrays.copyOfRange(args, 1, args.length)));
+        }
         launch(args);
     }
 }
\ No newline at end of file
@@ -1,129 +1,543 @@
 package com.scriptrunner;
 
-import javafx.concurrent.Task;
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
+import javafx.util.Duration;
 import org.fxmisc.richtext.CodeArea;
+import org.fxmisc.richtext.model.StyleSpan;
 import org.fxmisc.richtext.model.StyleSpans;
 import org.fxmisc.richtext.model.StyleSpansBuilder;
+import org.fxmisc.richtext.model.StyledDocument;
+import org.fxmisc.richtext.model.TwoDimensional.Bias;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+/*
+ * Syntax highlighting for one CodeArea, using SyntaxLexer.
+ * Paragraphs are lexed one at a time and the lexer state at the start of each one
+ * (inside a block comment or multi-line string, or not) is kept, so an edit only re-lexes
+ * the edited paragraphs and as many following ones as the state change actually reaches.
+ * Typing within a line costs the same in a 20-line script and in a 20k-line one.
+ *
+ * Lexing runs on a single shared worker thread once edits pause for DEBOUNCE_MILLIS.
+ * Each pass works on an immutable snapshot of the document and is tagged with the
+ * document version; an edit cancels the running pass, and a result that arrives for an
+ * older version is discarded, so spans are never applied to text they were not
+ * computed for.
+ *
+ * Long passes (a large script loaded or re-lexed) run in chunks of CHUNK_PARAGRAPHS,
+ * each applied as soon as it is done, with the entry state where it ended kept as a
+ * checkpoint to resume from. When the pass has not reached the viewport yet, the
+ * visible paragraphs are lexed first from their last known state, so the first colored
+ * frame does not depend on the size of the file. Very long passes (a script opened or
+ * pasted) lex all their chunks up front in parallel on multi-core machines, see
+ * lexParallel, and the chunks are then applied one at a time as before.
+ *
+ * Applying spans replaces paragraphs in the CodeArea, and every replaced paragraph is
+ * laid out and rendered again. So the lexed spans are compared with the styling each
+ * paragraph already has, and only the paragraphs that actually changed are replaced
+ * (changed paragraphs less than UNCHANGED_GAP apart go in one call).
+ * All spans share one immutable style collection per style.
+ *
+ * Lexed paragraphs are deliberately not cached. Looking a paragraph up by its text costs
+ * about as much as lexing it again, and when text comes back through undo, redo, a paste
+ * or a language switch, the time goes into applying its spans, not into lexing it.
+ */
 public class SyntaxHighlighter {
     
-    // Swift keywords (limited to 10 most common)
-    private static final Set<String> SWIFT_KEYWORDS = Set.of(
-        "func", "var", "let", "if", "else", "for", "while", "class", "struct", "import"
-    );
+    // Style classes per SyntaxLexer style, shared by all spans
+    private static final List<Collection<String>> STYLES = List.of(
+        Collections.emptyList(),
+        Collections.singleton("keyword"),
+        Collections.singleton("string"),
+        Collections.singleton("comment"));
+    private static final Collection<String> PLAIN = STYLES.get(SyntaxLexer.STYLE_PLAIN);
     
-    // Kotlin keywords (limited to 10 most common)
-    private static final Set<String> KOTLIN_KEYWORDS = Set.of(
-        "fun", "var", "val", "if", "else", "for", "while", "class", "object", "import"
-    );
+    // Entry state of a paragraph that has not been lexed yet
+    private static final int STATE_UNKNOWN = -1;
     
-    // Pattern for keywords
-    private static final Pattern KEYWORD_PATTERN = Pattern.compile("\\b(" + String.join("|", getAllKeywords()) + ")\\b");
+    // Quiet time after the last edit before a pass starts
+    private static final long DEBOUNCE_MILLIS = 30;
+    // Paragraphs lexed between checks for a newer document version
+    private static final int CANCEL_CHECK_INTERVAL = 256;
+    // Paragraphs lexed and applied per step of a long pass; the entry state where a step
+    // ends is stored, so the pass resumes from there
+    private static final int CHUNK_PARAGRAPHS = 1024;
+    // Passes over at least this many paragraphs are lexed in parallel, a chunk per task.
+    // With a single pool thread the lexing would only take CPU time from the FX thread.
+    private static final int PARALLEL_PARAGRAPHS = 4 * CHUNK_PARAGRAPHS;
+    private static final boolean PARALLEL = ForkJoinPool.getCommonPoolParallelism() > 1;
+    // Paragraphs above and below the viewport lexed ahead of a long pass
+    private static final int VIEWPORT_MARGIN = 50;
+    // Shortest run of unchanged paragraphs worth its own setStyleSpans call; each call
+    // costs about as much as restyling a few hundred paragraphs in one
+    private static final int UNCHANGED_GAP = 256;
     
-    // Pattern for strings
-    private static final Pattern STRING_PATTERN = Pattern.compile("\"([^\"\\\\]|\\\\.)*\"");
+    // One lexing thread for all highlighters
+    private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "syntax-highlighter");
+        thread.setDaemon(true);
+        return thread;
+    });
     
-    // Pattern for comments
-    private static final Pattern COMMENT_PATTERN = Pattern.compile("//[^\n]*" + "|" + "/\\*(.|\\R)*?\\*/");
+    private final CodeArea codeArea;
+    private ScriptRunnerApp.ScriptLanguage language;
     
-    // Combined pattern
-    private static final Pattern PATTERN = Pattern.compile(
-        "(?<KEYWORD>" + KEYWORD_PATTERN.pattern() + ")" +
-        "|(?<STRING>" + STRING_PATTERN.pattern() + ")" +
-        "|(?<COMMENT>" + COMMENT_PATTERN.pattern() + ")"
-    );
+    // Lexer state at the start of each paragraph, STATE_UNKNOWN until lexed
+    private int[] entryStates = new int[64];
+    private int paragraphCount;
     
-    private static Set<String> getAllKeywords() {
-        Set<String> allKeywords = new HashSet<>(SWIFT_KEYWORDS);
-        allKeywords.addAll(KOTLIN_KEYWORDS);
-        return allKeywords;
+    // Paragraphs edited since the last pass started; empty when dirtyFrom > dirtyTo
+    private int dirtyFrom = Integer.MAX_VALUE;
+    private int dirtyTo = -1;
+    private final PauseTransition debounce = new PauseTransition(Duration.millis(DEBOUNCE_MILLIS));
+    
+    // Bumped on every edit and language change; a pass for an older version is dropped
+    private volatile long version;
+    private Future<?> runningPass;
+    private int passFrom;
+    private int passTo;
+    private boolean viewportPending;
+    // Chunks of the running pass that were lexed ahead, applied one at a time in order
+    private final ArrayDeque<PassResult> lexedAhead = new ArrayDeque<>();
+    // Version and first paragraph of the last viewport lexed ahead of the pass
+    private long viewportVersion = -1;
+    private int viewportFirst;
+    
+    public SyntaxHighlighter(CodeArea codeArea, ScriptRunnerApp.ScriptLanguage language) {
+        this.codeArea = codeArea;
+        this.language = language;
+        this.paragraphCount = codeArea.getParagraphs().size();
+        debounce.setOnFinished(e -> startPass());
+        codeArea.estimatedScrollYProperty().addListener((obs, oldY, newY) -> onScrolled());
+        codeArea.plainTextChanges().subscribe(change ->
+            onTextChanged(change.getPosition(), change.getRemoved(), change.getInserted()));
+        highlightAll();
+    }
+    
+    public void setLanguage(ScriptRunnerApp.ScriptLanguage language) {
+        this.language = language;
+        version++;
+        cancelPass();
+        highlightAll();
     }
     
-    public static void highlight(CodeArea codeArea, ScriptRunnerApp.ScriptLanguage language) {
-        Task<StyleSpans<Collection<String>>> task = new Task<StyleSpans<Collection<String>>>() {
-            @Override
-            protected StyleSpans<Collection<String>> call() throws Exception {
-                return computeHighlighting(codeArea.getText(), language);
+    // Re-lexes the whole document, e.g. after a language change
+    public void highlightAll() {
+        if (entryStates.length < paragraphCount) {
+            entryStates = new int[paragraphCount];
+        }
+        Arrays.fill(entryStates, 0, paragraphCount, STATE_UNKNOWN);
+        entryStates[0] = SyntaxLexer.STATE_CODE;
+        markDirty(0, paragraphCount - 1);
+    }
+    
+    // Keeps the entry states aligned with the paragraphs and marks the edited ones dirty.
+    // The states after the edit are kept: re-lexing stops at the first paragraph whose
+    // entry state comes out unchanged.
+    private void onTextChanged(int position, String removed, String inserted) {
+        version++;
+        // The running pass lexes the old text; its paragraphs are owed again
+        cancelPass();
+        
+        int first = codeArea.offsetToPosition(position, Bias.Forward).getMajor();
+        int removedLines = countNewlines(removed);
+        int insertedLines = countNewlines(inserted);
+        
+        if (insertedLines != removedLines) {
+            int newCount = paragraphCount - removedLines + insertedLines;
+            if (newCount > entryStates.length) {
+                entryStates = Arrays.copyOf(entryStates, Math.max(newCount, entryStates.length * 2));
+            }
+            System.arraycopy(entryStates, first + removedLines + 1, entryStates, first + insertedLines + 1,
+                paragraphCount - first - removedLines - 1);
+            Arrays.fill(entryStates, first + 1, first + insertedLines + 1, STATE_UNKNOWN);
+            paragraphCount = newCount;
+            
+            // A pending dirty range moves with the paragraphs after the edit
+            if (dirtyTo > first + removedLines) {
+                dirtyTo += insertedLines - removedLines;
+            } else if (dirtyTo > first) {
+                dirtyTo = first;
             }
-        };
+        }
+        markDirty(first, first + insertedLines);
+    }
+    
+    // Restarts the debounce window; the pass starts once edits pause. Large changes
+    // (a loaded or pasted script, a language change) start a pass at once.
+    private void markDirty(int from, int to) {
+        dirtyFrom = Math.min(dirtyFrom, from);
+        dirtyTo = Math.max(dirtyTo, to);
+        if (to - from >= CHUNK_PARAGRAPHS) {
+            debounce.stop();
+            startPass();
+        } else {
+            debounce.playFromStart();
+        }
+    }
+    
+    private void cancelPass() {
+        if (runningPass != null) {
+            runningPass.cancel(false);
+            runningPass = null;
+            lexedAhead.clear();
+            dirtyFrom = Math.min(dirtyFrom, passFrom);
+            dirtyTo = Math.max(dirtyTo, passTo);
+        }
+    }
+    
+    // Hands the next chunk of dirty paragraphs to the worker, together with an immutable
+    // snapshot of the document and the entry states the chunk can reach, tagged with the
+    // current version. If the chunk will not reach the viewport, the visible paragraphs
+    // are lexed first.
+    private void startPass() {
+        int from = dirtyFrom;
+        int to = Math.min(dirtyTo, paragraphCount - 1);
+        if (from > to || language == null || runningPass != null) {
+            return;
+        }
+        dirtyFrom = Integer.MAX_VALUE;
+        dirtyTo = -1;
+        passFrom = from;
+        passTo = to;
         
-        task.setOnSucceeded(e -> {
-            try {
-                StyleSpans<Collection<String>> highlighting = task.getValue();
-                System.out.println("Applying highlighting with " + highlighting.length() + " spans");
-                codeArea.setStyleSpans(0, highlighting);
-                System.out.println("Syntax highlighting applied successfully");
-            } catch (Exception ex) {
-                System.err.println("Failed to apply syntax highlighting: " + ex.getMessage());
-                ex.printStackTrace();
+        long passVersion = version;
+        StyledDocument<Collection<String>, String, Collection<String>> snapshot = codeArea.getContent().snapshot();
+        int count = paragraphCount;
+        int[] states = Arrays.copyOfRange(entryStates, from, Math.min(count, from + CHUNK_PARAGRAPHS + 1));
+        SyntaxLexer lexer = SyntaxLexer.forLanguage(language);
+        if (PARALLEL && to - from + 1 >= PARALLEL_PARAGRAPHS) {
+            // No chunk is applied before all are lexed, so the viewport goes first
+            if (isViewportAfter(from)) {
+                highlightViewport(snapshot, lexer, passVersion);
+            }
+            int[] passStates = Arrays.copyOfRange(entryStates, from, Math.min(count, to + CHUNK_PARAGRAPHS + 1));
+            runningPass = WORKER.submit(() -> {
+                List<PassResult> results = lexParallel(snapshot, count, from, to, passStates, lexer, passVersion);
+                if (results != null) {
+                    Platform.runLater(() -> applyAhead(results));
+                }
+            });
+            return;
+        }
+        int limit = Math.min(count, from + CHUNK_PARAGRAPHS);
+        if (isViewportAfter(limit)) {
+            highlightViewport(snapshot, lexer, passVersion);
+        } else if (!codeArea.getVisibleParagraphs().isEmpty()) {
+            // A chunk that covers the viewport ends right after it, so it is shown first
+            int viewportEnd = codeArea.lastVisibleParToAllParIndex() + VIEWPORT_MARGIN + 1;
+            if (viewportEnd > from && viewportEnd < limit) {
+                limit = viewportEnd;
+            }
+        }
+        int chunkEnd = limit;
+        runningPass = WORKER.submit(() -> {
+            PassResult result = lex(snapshot, count, from, to, chunkEnd, states, 0, lexer, passVersion);
+            if (result != null) {
+                Platform.runLater(() -> apply(result));
             }
         });
-        
-        task.setOnFailed(e -> {
-            Throwable exception = task.getException();
-            System.err.println("Syntax highlighting task failed: " + exception.getMessage());
-            exception.printStackTrace();
+    }
+    
+    // The user scrolled ahead of a running pass: show the new viewport right away
+    private void onScrolled() {
+        if (runningPass != null && isViewportAfter(passFrom + CHUNK_PARAGRAPHS)) {
+            highlightViewport(codeArea.getContent().snapshot(), SyntaxLexer.forLanguage(language), version);
+        }
+    }
+    
+    private boolean isViewportAfter(int paragraph) {
+        return !codeArea.getVisibleParagraphs().isEmpty() && codeArea.lastVisibleParToAllParIndex() >= paragraph;
+    }
+    
+    // Lexes the visible paragraphs plus a margin ahead of the pass. Their true entry
+    // state is not known yet, so the one stored from earlier passes (or plain code) is
+    // assumed; the pass corrects the spans when it gets there if that was wrong.
+    private void highlightViewport(StyledDocument<Collection<String>, String, Collection<String>> snapshot,
+                                   SyntaxLexer lexer, long passVersion) {
+        int count = paragraphCount;
+        int first = Math.max(0, codeArea.firstVisibleParToAllParIndex() - VIEWPORT_MARGIN);
+        if (viewportPending || (viewportVersion == passVersion && viewportFirst == first)) {
+            return;
+        }
+        viewportVersion = passVersion;
+        viewportFirst = first;
+        int last = Math.min(count - 1, codeArea.lastVisibleParToAllParIndex() + VIEWPORT_MARGIN);
+        int assumedState = entryStates[first] == STATE_UNKNOWN ? SyntaxLexer.STATE_CODE : entryStates[first];
+        viewportPending = true;
+        WORKER.submit(() -> {
+            PassResult result = null;
+            try {
+                result = lex(snapshot, count, first, last, last + 1, null, assumedState, lexer, passVersion);
+            } finally {
+                // Posted even when the document moved on, so viewportPending is always cleared
+                PassResult lexed = result;
+                Platform.runLater(() -> applyViewport(lexed));
+            }
         });
+    }
+    
+    // Runs on the worker. Lexes from `from` until `to` is done and the next paragraph's
+    // entry state is unchanged, or until `limit`; states[i] is the entry state of paragraph
+    // from + i and receives the new ones, including the checkpoint where the chunk stopped.
+    // Without states, lexes exactly [from, to] from entryState.
+    // Returns null once the document has moved on.
+    private PassResult lex(StyledDocument<Collection<String>, String, Collection<String>> snapshot, int count,
+                           int from, int to, int limit, int[] states, int entryState, SyntaxLexer lexer,
+                           long passVersion) {
+        StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>();
+        SyntaxLexer.SpanSink sink = (style, length) -> spansBuilder.add(STYLES.get(style), length);
+        spansBuilder.add(PLAIN, 0);
+        int state = states == null ? entryState : states[0];
+        int paragraph = from;
+        boolean complete;
+        while (true) {
+            if ((paragraph - from) % CANCEL_CHECK_INTERVAL == 0 && version != passVersion) {
+                return null;
+            }
+            String text = snapshot.getParagraph(paragraph).getText();
+            state = lexer.lexParagraph(text, 0, text.length(), state, sink);
+            paragraph++;
+            if (paragraph == count || (paragraph > to && (states == null || states[paragraph - from] == state))) {
+                complete = true;
+                break;
+            }
+            if (paragraph == limit) {
+                complete = false;
+                break;
+            }
+            if (states != null) {
+                states[paragraph - from] = state;
+            }
+            spansBuilder.add(PLAIN, 1);   // the line break
+        }
+        if (states != null && paragraph < count) {
+            states[paragraph - from] = state;
+        }
+        return new PassResult(passVersion, from, paragraph, complete, states, spansBuilder.create());
+    }
+    
+    // Runs on the worker. Lexes paragraphs [from, to] in chunks of CHUNK_PARAGRAPHS on the
+    // common ForkJoinPool; states holds their entry states from `from` on. Each chunk starts
+    // from the state stored for its first paragraph, or plain code if it was never lexed.
+    // The chunks are then checked in order, and one whose real entry state (where the
+    // chunk before ended) is not the one it assumed is lexed again. That only happens when
+    // a block comment or multi-line string is open across the chunk boundary.
+    // Returns the chunks in order, or null once the document has moved on.
+    private List<PassResult> lexParallel(StyledDocument<Collection<String>, String, Collection<String>> snapshot,
+                                         int count, int from, int to, int[] states, SyntaxLexer lexer,
+                                         long passVersion) {
+        List<Callable<PassResult>> tasks = new ArrayList<>();
+        for (int chunkFrom = from; chunkFrom <= to; chunkFrom += CHUNK_PARAGRAPHS) {
+            int[] chunkStates = chunkStates(states, from, chunkFrom, count, -1);
+            int start = chunkFrom;
+            tasks.add(() -> lex(snapshot, count, start, to, Math.min(count, start + CHUNK_PARAGRAPHS),
+                chunkStates, 0, lexer, passVersion));
+        }
         
-        // Run highlighting in background thread to avoid blocking UI
-        Thread highlightThread = new Thread(task);
-        highlightThread.setDaemon(true);
-        highlightThread.start();
+        List<PassResult> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<PassResult> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                PassResult result = future.get();
+                if (result != null && !results.isEmpty()) {
+                    PassResult previous = results.get(results.size() - 1);
+                    int entryState = previous.states[previous.end - previous.from];
+                    if (result.states[0] != entryState) {
+                        result = lex(snapshot, count, result.from, to, Math.min(count, result.from + CHUNK_PARAGRAPHS),
+                            chunkStates(states, from, result.from, count, entryState), 0, lexer, passVersion);
+                    }
+                }
+                if (result == null) {
+                    return null;
+                }
+                results.add(result);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Lexing failed", e.getCause());
+        }
+        return results;
+    }
+    
+    // A chunk's own copy of the pass states from chunkFrom on, starting in entryState
+    // (or the stored state, plain code if unknown, when entryState is -1)
+    private static int[] chunkStates(int[] states, int from, int chunkFrom, int count, int entryState) {
+        int end = Math.min(Math.min(count, chunkFrom + CHUNK_PARAGRAPHS + 1) - from, states.length);
+        int[] chunkStates = Arrays.copyOfRange(states, chunkFrom - from, end);
+        if (entryState >= 0) {
+            chunkStates[0] = entryState;
+        } else if (chunkStates[0] == STATE_UNKNOWN) {
+            chunkStates[0] = SyntaxLexer.STATE_CODE;
+        }
+        return chunkStates;
+    }
+    
+    private void applyAhead(List<PassResult> results) {
+        if (results.get(0).version != version) {
+            return;
+        }
+        lexedAhead.addAll(results);
+        apply(lexedAhead.poll());
+    }
+    
+    // Back on the FX thread; results for an older version are stale and dropped.
+    // An unfinished pass applies its next chunk if it was lexed ahead, after input and
+    // rendering had their turn, or continues from its checkpoint right away.
+    private void apply(PassResult result) {
+        if (result.version != version) {
+            return;
+        }
+        int last = Math.min(result.end, paragraphCount - 1);
+        System.arraycopy(result.states, 1, entryStates, result.from + 1, last - result.from);
+        applyChanged(result.from, result.end, result.spans);
+        PassResult next = lexedAhead.poll();
+        if (next != null) {
+            passFrom = next.from;
+            Platform.runLater(() -> apply(next));
+            return;
+        }
+        runningPass = null;
+        if (!result.complete) {
+            dirtyFrom = Math.min(dirtyFrom, result.end);
+            dirtyTo = Math.max(dirtyTo, Math.max(passTo, result.end));
+            startPass();
+        }
+    }
+    
+    // Viewport spans are only applied to paragraphs the running pass has not verified yet;
+    // result is null if the lex was dropped
+    private void applyViewport(PassResult result) {
+        viewportPending = false;
+        if (result == null || result.version != version || runningPass == null || passFrom >= result.end) {
+            return;
+        }
+        StyleSpans<Collection<String>> spans = result.spans;
+        int from = result.from;
+        if (passFrom > from) {
+            int skipped = codeArea.getAbsolutePosition(passFrom, 0) - codeArea.getAbsolutePosition(from, 0);
+            spans = spans.subView(skipped, spans.length());
+            from = passFrom;
+        }
+        applyChanged(from, result.end, spans);
     }
     
-    private static StyleSpans<Collection<String>> computeHighlighting(String text, ScriptRunnerApp.ScriptLanguage language) {
-        System.out.println("Computing highlighting for text: " + text.substring(0, Math.min(50, text.length())) + "...");
-        System.out.println("Language: " + language);
+    // spans covers paragraphs [from, end) and the line breaks between them. Only the
+    // paragraphs whose styling differs from what they show now are set, a run of them
+    // per call; paragraphs that already look right are left alone.
+    private void applyChanged(int from, int end, StyleSpans<Collection<String>> spans) {
+        SpanCursor cursor = new SpanCursor(spans);
+        // Current run: paragraphs [runFrom, runTo] from char runStart to runEnd
+        int runFrom = -1;
+        int runTo = 0;
+        int runStart = 0;
+        int runEnd = 0;
+        for (int paragraph = from; paragraph < end; paragraph++) {
+            int start = cursor.position;
+            if (!cursor.skipIfSame(codeArea.getParagraph(paragraph).getStyleSpans(),
+                    codeArea.getParagraphLength(paragraph))) {
+                if (runFrom >= 0 && paragraph - runTo > UNCHANGED_GAP) {
+                    codeArea.setStyleSpans(runFrom, 0, spans.subView(runStart, runEnd));
+                    runFrom = -1;
+                }
+                if (runFrom < 0) {
+                    runFrom = paragraph;
+                    runStart = start;
+                }
+                runTo = paragraph;
+                runEnd = cursor.position;
+            }
+            cursor.advance(1);   // the line break
+        }
+        if (runFrom >= 0) {
+            codeArea.setStyleSpans(runFrom, 0, spans.subView(runStart, runEnd));
+        }
+    }
+    
+    // Walks a StyleSpans char by char, a span at a time
+    private static class SpanCursor {
+        private final StyleSpans<Collection<String>> spans;
+        private int index;
+        // Chars of the current span already passed
+        private int offset;
+        // Chars passed in total
+        int position;
         
-        Matcher matcher = PATTERN.matcher(text);
-        int lastKwEnd = 0;
-        StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>();
+        SpanCursor(StyleSpans<Collection<String>> spans) {
+            this.spans = spans;
+            advance(0);
+        }
         
-        Set<String> relevantKeywords = getKeywordsForLanguage(language);
-        System.out.println("Relevant keywords: " + relevantKeywords);
+        void advance(int length) {
+            position += length;
+            offset += length;
+            while (index < spans.getSpanCount() && offset >= spans.getStyleSpan(index).getLength()) {
+                offset -= spans.getStyleSpan(index).getLength();
+                index++;
+            }
+        }
         
-        while (matcher.find()) {
-            String styleClass = null;
-            
-            if (matcher.group("KEYWORD") != null) {
-                // Only highlight if it's a keyword for the current language
-                String keyword = matcher.group("KEYWORD");
-                if (relevantKeywords.contains(keyword)) {
-                    styleClass = "keyword";
+        // Moves past the next `length` chars and tells whether they carry the same styles
+        // as `current`, however either side splits them into spans
+        boolean skipIfSame(StyleSpans<Collection<String>> current, int length) {
+            int end = position + length;
+            boolean same = current.length() == length;
+            for (StyleSpan<Collection<String>> span : current) {
+                int left = span.getLength();
+                while (same && left > 0) {
+                    int step = Math.min(left, spans.getStyleSpan(index).getLength() - offset);
+                    Collection<String> style = spans.getStyleSpan(index).getStyle();
+                    same = style == span.getStyle() || style.equals(span.getStyle());
+                    advance(step);
+                    left -= step;
                 }
-            } else if (matcher.group("STRING") != null) {
-                styleClass = "string";
-            } else if (matcher.group("COMMENT") != null) {
-                styleClass = "comment";
-            }
-            
-            if (styleClass != null) {
-                spansBuilder.add(Collections.emptyList(), matcher.start() - lastKwEnd);
-                spansBuilder.add(Collections.singleton(styleClass), matcher.end() - matcher.start());
-                lastKwEnd = matcher.end();
             }
+            advance(end - position);
+            return same;
         }
-        spansBuilder.add(Collections.emptyList(), text.length() - lastKwEnd);
-        return spansBuilder.create();
     }
     
-    private static Set<String> getKeywordsForLanguage(ScriptRunnerApp.ScriptLanguage language) {
-        switch (language) {
-            case SWIFT:
-                return SWIFT_KEYWORDS;
-            case KOTLIN:
-                return KOTLIN_KEYWORDS;
-            default:
-                return Collections.emptySet();
+    private static class PassResult {
+        final long version;
+        // Paragraphs [from, end) were lexed; false if the pass stopped at the chunk limit
+        final int from;
+        final int end;
+        final boolean complete;
+        // Entry states of paragraphs from..end, null for a viewport pass
+        final int[] states;
+        final StyleSpans<Collection<String>> spans;
+        
+        PassResult(long version, int from, int end, boolean complete, int[] states, StyleSpans<Collection<String>> spans) {
+            this.version = version;
+            this.from = from;
+            this.end = end;
+            this.complete = complete;
+            this.states = states;
+            this.spans = spans;
+        }
+    }
+    
+    private static int countNewlines(String text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
         }
+        return count;
     }
     
     // CSS styles for syntax highlighting
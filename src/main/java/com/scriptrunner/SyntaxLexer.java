@@ -0,0 +1,270 @@
+package com.scriptrunner;
+
+import java.util.Arrays;
+
+/*
+ * Hand-written lexer for Swift and Kotlin highlighting.
+ * A character-class table drives a small state machine over one paragraph at a time; it
+ * reports style runs as (style, length) pairs and never creates substrings, so lexing
+ * allocates nothing. Keywords are looked up in a trie built once per language over its
+ * full keyword set. Instances are immutable and may be shared between threads.
+ *
+ * The state passed from one paragraph to the next says whether a block comment or a
+ * triple-quoted string is still open.
+ */
+public class SyntaxLexer {
+    
+    public interface SpanSink {
+        void addSpan(int style, int length);
+    }
+    
+    // Styles reported to the sink
+    public static final int STYLE_PLAIN = 0;
+    public static final int STYLE_KEYWORD = 1;
+    public static final int STYLE_STRING = 2;
+    public static final int STYLE_COMMENT = 3;
+    
+    // Lexer state at a paragraph boundary
+    public static final int STATE_CODE = 0;
+    public static final int STATE_BLOCK_COMMENT = 1;
+    public static final int STATE_MULTILINE_STRING = 2;
+    
+    private static final String[] SWIFT_KEYWORDS = {
+        // Declarations
+        "associatedtype", "class", "deinit", "enum", "extension", "fileprivate", "func", "import", "init",
+        "inout", "internal", "let", "open", "operator", "private", "precedencegroup", "protocol", "public",
+        "rethrows", "static", "struct", "subscript", "typealias", "var", "actor",
+        // Statements
+        "break", "case", "catch", "continue", "default", "defer", "do", "else", "fallthrough", "for",
+        "guard", "if", "in", "repeat", "return", "throw", "switch", "where", "while",
+        // Expressions and types
+        "Any", "as", "async", "await", "false", "is", "nil", "self", "Self", "super", "throws", "true", "try",
+        // Contextual
+        "convenience", "dynamic", "final", "indirect", "lazy", "mutating", "nonmutating", "optional",
+        "override", "required", "some", "weak", "unowned"
+    };
+    
+    private static final String[] KOTLIN_KEYWORDS = {
+        // Hard keywords
+        "as", "break", "class", "continue", "do", "else", "false", "for", "fun", "if", "in", "interface",
+        "is", "null", "object", "package", "return", "super", "this", "throw", "true", "try", "typealias",
+        "typeof", "val", "var", "when", "while",
+        // Soft keywords
+        "by", "catch", "constructor", "finally", "import", "init", "where",
+        // Modifiers
+        "abstract", "actual", "annotation", "companion", "const", "crossinline", "data", "enum", "expect",
+        "external", "final", "infix", "inline", "inner", "internal", "lateinit", "noinline", "open",
+        "operator", "out", "override", "private", "protected", "public", "reified", "sealed", "suspend",
+        "tailrec", "vararg"
+    };
+    
+    private static final SyntaxLexer SWIFT = new SyntaxLexer(SWIFT_KEYWORDS);
+    private static final SyntaxLexer KOTLIN = new SyntaxLexer(KOTLIN_KEYWORDS);
+    
+    // Character classes of ASCII chars; beyond ASCII, letters and digits are WORD
+    private static final byte OTHER = 0;
+    private static final byte WORD = 1;
+    private static final byte QUOTE = 2;
+    private static final byte SLASH = 3;
+    private static final byte[] CHAR_CLASS = new byte[128];
+    
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            CHAR_CLASS[c] = WORD;
+            CHAR_CLASS[Character.toUpperCase(c)] = WORD;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            CHAR_CLASS[c] = WORD;
+        }
+        CHAR_CLASS['_'] = WORD;
+        CHAR_CLASS['"'] = QUOTE;
+        CHAR_CLASS['/'] = SLASH;
+    }
+    
+    private final KeywordTrie keywords;
+    
+    private SyntaxLexer(String[] keywords) {
+        this.keywords = new KeywordTrie(keywords);
+    }
+    
+    public static SyntaxLexer forLanguage(ScriptRunnerApp.ScriptLanguage language) {
+        return language == ScriptRunnerApp.ScriptLanguage.KOTLIN ? KOTLIN : SWIFT;
+    }
+    
+    // Lexes text[start, end), one paragraph without its line break, starting in `state`.
+    // The spans reported are non-empty and cover exactly end - start chars; returns the
+    // state at the end.
+    public int lexParagraph(CharSequence text, int start, int end, int state, SpanSink sink) {
+        int plainStart = start;
+        int i = start;
+        
+        // Finish a comment or string left open by the paragraphs before
+        if (state != STATE_CODE) {
+            boolean comment = state == STATE_BLOCK_COMMENT;
+            int close = comment ? findCommentEnd(text, i, end) : findMultilineStringEnd(text, i, end);
+            int style = comment ? STYLE_COMMENT : STYLE_STRING;
+            if (close < 0) {
+                if (end > start) {
+                    sink.addSpan(style, end - start);
+                }
+                return state;
+            }
+            sink.addSpan(style, close - start);
+            plainStart = i = close;
+        }
+        
+        // Once a quote has no closing quote, no later quote on the paragraph has one
+        boolean unclosedQuote = false;
+        while (i < end) {
+            char c = text.charAt(i);
+            switch (c < 128 ? CHAR_CLASS[c] : Character.isLetterOrDigit(c) ? WORD : OTHER) {
+                case WORD: {
+                    int wordEnd = i + 1;
+                    while (wordEnd < end && isWordChar(text.charAt(wordEnd))) {
+                        wordEnd++;
+                    }
+                    if (keywords.contains(text, i, wordEnd)) {
+                        emit(sink, plainStart, i, STYLE_KEYWORD, wordEnd);
+                        plainStart = wordEnd;
+                    }
+                    i = wordEnd;
+                    break;
+                }
+                case QUOTE: {
+                    if (i + 2 < end && text.charAt(i + 1) == '"' && text.charAt(i + 2) == '"') {
+                        int close = findMultilineStringEnd(text, i + 3, end);
+                        if (close < 0) {
+                            emit(sink, plainStart, i, STYLE_STRING, end);
+                            return STATE_MULTILINE_STRING;
+                        }
+                        emit(sink, plainStart, i, STYLE_STRING, close);
+                        plainStart = i = close;
+                    } else {
+                        int close = unclosedQuote ? -1 : findStringEnd(text, i + 1, end);
+                        if (close < 0) {
+                            // An unterminated quote stays plain
+                            unclosedQuote = true;
+                            i++;
+                        } else {
+                            emit(sink, plainStart, i, STYLE_STRING, close);
+                            plainStart = i = close;
+                        }
+                    }
+                    break;
+                }
+                case SLASH: {
+                    char next = i + 1 < end ? text.charAt(i + 1) : 0;
+                    if (next == '/') {
+                        emit(sink, plainStart, i, STYLE_COMMENT, end);
+                        return STATE_CODE;
+                    } else if (next == '*') {
+                        int close = findCommentEnd(text, i + 2, end);
+                        if (close < 0) {
+                            emit(sink, plainStart, i, STYLE_COMMENT, end);
+                            return STATE_BLOCK_COMMENT;
+                        }
+                        emit(sink, plainStart, i, STYLE_COMMENT, close);
+                        plainStart = i = close;
+                    } else {
+                        i++;
+                    }
+                    break;
+                }
+                default:
+                    i++;
+            }
+        }
+        if (end > plainStart) {
+            sink.addSpan(STYLE_PLAIN, end - plainStart);
+        }
+        return STATE_CODE;
+    }
+    
+    // Reports the plain text before a token, then the token [tokenStart, tokenEnd)
+    private static void emit(SpanSink sink, int plainStart, int tokenStart, int style, int tokenEnd) {
+        if (tokenStart > plainStart) {
+            sink.addSpan(STYLE_PLAIN, tokenStart - plainStart);
+        }
+        sink.addSpan(style, tokenEnd - tokenStart);
+    }
+    
+    private static boolean isWordChar(char c) {
+        return c < 128 ? CHAR_CLASS[c] == WORD : Character.isLetterOrDigit(c);
+    }
+    
+    // Index just past the quote closing a string whose body starts at i, or -1
+    private static int findStringEnd(CharSequence text, int i, int end) {
+        while (i < end) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                return i + 1;
+            }
+            i += c == '\\' ? 2 : 1;
+        }
+        return -1;
+    }
+    
+    // Index just past the next "*/", or -1
+    private static int findCommentEnd(CharSequence text, int i, int end) {
+        for (; i + 1 < end; i++) {
+            if (text.charAt(i) == '*' && text.charAt(i + 1) == '/') {
+                return i + 2;
+            }
+        }
+        return -1;
+    }
+    
+    // Index just past the next triple quote, or -1
+    private static int findMultilineStringEnd(CharSequence text, int i, int end) {
+        for (; i + 2 < end; i++) {
+            if (text.charAt(i) == '"' && text.charAt(i + 1) == '"' && text.charAt(i + 2) == '"') {
+                return i + 3;
+            }
+        }
+        return -1;
+    }
+    
+    // Trie over ASCII letters in flat arrays: node n's child for char c is
+    // next[n * RANGE + c - FIRST], 0 meaning none (the root is never a child)
+    private static class KeywordTrie {
+        private static final char FIRST = 'A';
+        private static final int RANGE = 'z' - 'A' + 1;
+        
+        private int[] next = new int[16 * RANGE];
+        private boolean[] terminal = new boolean[16];
+        private int nodeCount = 1;
+        
+        KeywordTrie(String[] words) {
+            for (String word : words) {
+                int node = 0;
+                for (int i = 0; i < word.length(); i++) {
+                    int slot = node * RANGE + word.charAt(i) - FIRST;
+                    if (next[slot] == 0) {
+                        if (nodeCount == terminal.length) {
+                            next = Arrays.copyOf(next, next.length * 2);
+                            terminal = Arrays.copyOf(terminal, terminal.length * 2);
+                        }
+                        next[slot] = nodeCount++;
+                    }
+                    node = next[slot];
+                }
+                terminal[node] = true;
+            }
+        }
+        
+        boolean contains(CharSequence text, int start, int end) {
+            int node = 0;
+            for (int i = start; i < end; i++) {
+                int c = text.charAt(i) - FIRST;
+                if (c < 0 || c >= RANGE) {
+                    return false;
+                }
+                node = next[node * RANGE + c];
+                if (node == 0) {
+                    return false;
+                }
+            }
+            return terminal[node];
+        }
+    }
+}